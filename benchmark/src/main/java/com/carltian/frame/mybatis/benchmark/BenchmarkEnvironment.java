@@ -0,0 +1,128 @@
+package com.carltian.frame.mybatis.benchmark;
+
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.servlet.ServletContext;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+
+import com.carltian.frame.CurrentContext;
+import com.carltian.frame.container.annotation.ContainerConstructor;
+import com.carltian.frame.mybatis.MyBatisManagerImpl;
+
+/**
+ * 基准测试的运行环境：在容器之外创建MyBatisManagerImpl，使用H2内存数据库，不依赖外部环境。
+ *
+ * @author Carl Tian
+ */
+public final class BenchmarkEnvironment {
+
+	public static final String CONFIG_PATH = "/mybatis-benchmark.xml";
+	public static final int ITEM_COUNT = 100;
+	/**
+	 * 每轮测试结束时关闭管理器最多等待的时间（毫秒）
+	 */
+	public static final long SHUTDOWN_TIMEOUT = 5000;
+
+	private BenchmarkEnvironment() {
+	}
+
+	/**
+	 * 创建一个只配置了主库的管理器，其余初始化参数都使用默认值。
+	 */
+	public static MyBatisManagerImpl createManager() throws Exception {
+		installServletContext();
+		Constructor<?> target = null;
+		for (Constructor<?> constructor : MyBatisManagerImpl.class.getConstructors()) {
+			if (constructor.isAnnotationPresent(ContainerConstructor.class)) {
+				target = constructor;
+			}
+		}
+		if (target == null) {
+			throw new IllegalStateException("没有找到MyBatisManagerImpl的容器构造函数！");
+		}
+		// 第一个参数为配置文件路径，其余参数及容器都为null
+		Object[] args = new Object[target.getParameterTypes().length];
+		args[0] = CONFIG_PATH;
+		MyBatisManagerImpl manager = (MyBatisManagerImpl) target.newInstance(args);
+		createSchema();
+		return manager;
+	}
+
+	/**
+	 * 使用相同的配置直接创建SqlSessionFactory，作为对照。
+	 */
+	public static SqlSessionFactory createRawFactory() throws Exception {
+		InputStream is = openResource(CONFIG_PATH);
+		try {
+			return new SqlSessionFactoryBuilder().build(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * 创建测试数据，多次调用时结果相同。
+	 */
+	private static void createSchema() throws Exception {
+		SqlSession session = createRawFactory().openSession();
+		try {
+			Connection connection = session.getConnection();
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("CREATE TABLE IF NOT EXISTS item (id INT PRIMARY KEY, name VARCHAR(64))");
+				for (int i = 1; i <= ITEM_COUNT; i++) {
+					statement.execute("MERGE INTO item (id, name) VALUES (" + i + ", 'item-" + i + "')");
+				}
+			} finally {
+				statement.close();
+			}
+			connection.commit();
+		} finally {
+			session.close();
+		}
+	}
+
+	private static InputStream openResource(String path) {
+		return BenchmarkEnvironment.class.getResourceAsStream(path);
+	}
+
+	/**
+	 * 管理器通过{@link CurrentContext}读取配置文件，容器之外需要以类路径中的资源代替Web应用的资源。<br/>
+	 * ServletContext由ctFrame在Web应用启动时保存在CurrentContext的静态字段中，这里通过反射设置。
+	 */
+	private static void installServletContext() throws Exception {
+		ServletContext context = (ServletContext) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("getResourceAsStream".equals(method.getName())) {
+							return openResource((String) args[0]);
+						}
+						if ("getResource".equals(method.getName())) {
+							return BenchmarkEnvironment.class.getResource((String) args[0]);
+						}
+						// getRealPath等返回null，即不在文件系统中
+						return null;
+					}
+				});
+		for (Field field : CurrentContext.class.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers()) && field.getType().isAssignableFrom(ServletContext.class)) {
+				field.setAccessible(true);
+				field.set(null, context);
+				return;
+			}
+		}
+		throw new IllegalStateException("无法设置CurrentContext中的ServletContext，请检查ctFrame的版本！");
+	}
+}
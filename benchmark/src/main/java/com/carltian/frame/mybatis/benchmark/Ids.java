@@ -0,0 +1,20 @@
+package com.carltian.frame.mybatis.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 依次循环使用测试数据的id，避免每次都查询同一条数据。
+ *
+ * @author Carl Tian
+ */
+@State(Scope.Thread)
+public class Ids {
+
+	private int current;
+
+	public int next() {
+		current = current % BenchmarkEnvironment.ITEM_COUNT + 1;
+		return current;
+	}
+}
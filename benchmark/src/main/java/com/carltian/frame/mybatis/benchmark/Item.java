@@ -0,0 +1,36 @@
+package com.carltian.frame.mybatis.benchmark;
+
+/**
+ * 基准测试使用的数据。
+ *
+ * @author Carl Tian
+ */
+public class Item {
+
+	private int id;
+	private String name;
+
+	public Item() {
+	}
+
+	public Item(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+}
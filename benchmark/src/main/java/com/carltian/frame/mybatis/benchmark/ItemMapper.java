@@ -0,0 +1,14 @@
+package com.carltian.frame.mybatis.benchmark;
+
+/**
+ * 基准测试使用的Mapper，语句定义在ItemMapper.xml中。
+ *
+ * @author Carl Tian
+ */
+public interface ItemMapper {
+
+	public abstract Item selectById(int id);
+
+	public abstract int updateName(Item item);
+
+}
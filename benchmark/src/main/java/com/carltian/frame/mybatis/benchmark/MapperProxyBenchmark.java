@@ -0,0 +1,77 @@
+package com.carltian.frame.mybatis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carltian.frame.mybatis.MyBatisManagerImpl;
+
+/**
+ * Mapper代理的调用开销：不在共享Session中时每次调用打开并关闭一个Session，在共享Session中时直接使用该Session。
+ *
+ * @author Carl Tian
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperProxyBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Env {
+		MyBatisManagerImpl manager;
+		ItemMapper mapper;
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			manager = BenchmarkEnvironment.createManager();
+			mapper = manager.getMapper(ItemMapper.class);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			manager.shutdown(BenchmarkEnvironment.SHUTDOWN_TIMEOUT);
+		}
+	}
+
+	/**
+	 * 共享Session绑定在线程上，所以在执行测试的线程中打开。
+	 */
+	@State(Scope.Thread)
+	public static class SharedSession {
+		private Env env;
+
+		@Setup(Level.Iteration)
+		public void open(Env env) {
+			this.env = env;
+			env.manager.openSharedSession();
+		}
+
+		@TearDown(Level.Iteration)
+		public void close() {
+			env.manager.closeSharedSession();
+		}
+	}
+
+	@Benchmark
+	public Item withoutSharedSession(Env env, Ids ids) {
+		return env.mapper.selectById(ids.next());
+	}
+
+	@Benchmark
+	public Item withSharedSession(Env env, SharedSession sharedSession, Ids ids) {
+		return env.mapper.selectById(ids.next());
+	}
+}
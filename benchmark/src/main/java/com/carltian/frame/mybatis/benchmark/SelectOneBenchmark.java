@@ -0,0 +1,65 @@
+package com.carltian.frame.mybatis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carltian.frame.mybatis.MyBatisManagerImpl;
+
+/**
+ * {@link MyBatisManagerImpl#selectOne(String, Object)}与直接使用SqlSession的对比，差值即管理器的额外开销。
+ *
+ * @author Carl Tian
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SelectOneBenchmark {
+
+	private static final String SELECT_BY_ID = ItemMapper.class.getName() + ".selectById";
+
+	private MyBatisManagerImpl manager;
+	private SqlSessionFactory rawFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		manager = BenchmarkEnvironment.createManager();
+		rawFactory = BenchmarkEnvironment.createRawFactory();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		manager.shutdown(BenchmarkEnvironment.SHUTDOWN_TIMEOUT);
+	}
+
+	@Benchmark
+	public Item manager(Ids ids) {
+		return manager.selectOne(SELECT_BY_ID, ids.next());
+	}
+
+	@Benchmark
+	public Item rawSqlSession(Ids ids) {
+		SqlSession session = rawFactory.openSession();
+		try {
+			return session.selectOne(SELECT_BY_ID, ids.next());
+		} finally {
+			session.close();
+		}
+	}
+}
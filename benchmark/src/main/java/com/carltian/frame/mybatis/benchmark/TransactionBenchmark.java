@@ -0,0 +1,82 @@
+package com.carltian.frame.mybatis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carltian.frame.mybatis.MyBatisManagerImpl;
+import com.carltian.frame.mybatis.Transaction;
+
+/**
+ * 事务对象的开销：构造（包括各类型回调函数的列表）及关闭一个未使用的事务，以及执行一条更新并提交，
+ * 后者与直接使用SqlSession对比。
+ *
+ * @author Carl Tian
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+
+	private static final String UPDATE_NAME = ItemMapper.class.getName() + ".updateName";
+
+	private MyBatisManagerImpl manager;
+	private SqlSessionFactory rawFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		manager = BenchmarkEnvironment.createManager();
+		rawFactory = BenchmarkEnvironment.createRawFactory();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		manager.shutdown(BenchmarkEnvironment.SHUTDOWN_TIMEOUT);
+	}
+
+	@Benchmark
+	public Transaction constructAndClose() {
+		Transaction transaction = manager.getTransaction();
+		transaction.close();
+		return transaction;
+	}
+
+	@Benchmark
+	public int updateAndCommit(Ids ids) {
+		int id = ids.next();
+		// 自动关闭的事务在提交后释放连接
+		Transaction transaction = manager.getTransaction();
+		int result = transaction.update(UPDATE_NAME, new Item(id, "item-" + id));
+		transaction.commit();
+		return result;
+	}
+
+	@Benchmark
+	public int rawUpdateAndCommit(Ids ids) {
+		int id = ids.next();
+		SqlSession session = rawFactory.openSession();
+		try {
+			int result = session.update(UPDATE_NAME, new Item(id, "item-" + id));
+			session.commit();
+			return result;
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.carltian.frame.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * {@link ConcurrencyLimiter}的上限调整：没有排队时放宽到最大值，持续排队时收紧到最小值。<br/>
+ * 执行时间通过向release传入提前的开始时间模拟，不依赖实际的执行时间。
+ * 
+ * @author Carl Tian
+ */
+public class ConcurrencyLimiterTest {
+
+	private static final long BASE_RTT = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void growsToMaxLimitWithoutQueueing() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, 50);
+		for (int i = 0; i < 100; i++) {
+			fill(limiter, BASE_RTT);
+		}
+		assertEquals(50, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void shrinksBelowSquareRootTermUnderSustainedQueueing() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, 50);
+		fill(limiter, BASE_RTT);
+		for (int i = 0; i < 60; i++) {
+			fill(limiter, BASE_RTT * 20);
+		}
+		// 平方根项曾使上限停在4左右
+		assertEquals(1, limiter.getLimit());
+	}
+
+	@Test
+	public void neverShrinksBelowMinLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 8, 50);
+		fill(limiter, BASE_RTT);
+		for (int i = 0; i < 60; i++) {
+			fill(limiter, BASE_RTT * 20);
+			assertTrue(limiter.getLimit() >= 8);
+		}
+		assertEquals(8, limiter.getLimit());
+	}
+
+	@Test
+	public void recoversAfterQueueingEnds() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, 50);
+		fill(limiter, BASE_RTT);
+		for (int i = 0; i < 60; i++) {
+			fill(limiter, BASE_RTT * 20);
+		}
+		for (int i = 0; i < 100; i++) {
+			fill(limiter, BASE_RTT);
+		}
+		assertEquals(50, limiter.getLimit());
+	}
+
+	@Test
+	public void minLimitAboveMaxLimitIsCapped() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 100, 10);
+		fill(limiter, BASE_RTT);
+		for (int i = 0; i < 60; i++) {
+			fill(limiter, BASE_RTT * 20);
+		}
+		assertEquals(10, limiter.getLimit());
+	}
+
+	/**
+	 * 占满当前上限的全部名额，再以指定的执行时间逐个释放。
+	 */
+	private static void fill(ConcurrencyLimiter limiter, long rttNanos) {
+		int count = limiter.getLimit();
+		for (int i = 0; i < count; i++) {
+			limiter.acquire(0);
+		}
+		for (int i = 0; i < count; i++) {
+			limiter.release(System.nanoTime() - rttNanos, true);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.carltian.frame.mybatis.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ConcurrentPooledDataSource}的并发借用、归还及关闭，使用H2内存数据库。
+ * 
+ * @author Carl Tian
+ */
+public class ConcurrentPooledDataSourceTest {
+
+	private static final int MAX_SIZE = 4;
+
+	private ConcurrentPooledDataSource dataSource;
+
+	@Before
+	public void setUp() {
+		dataSource = new ConcurrentPooledDataSource();
+		dataSource.setDriver("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:mem:pool-test;DB_CLOSE_DELAY=-1");
+		dataSource.setUsername("sa");
+		dataSource.setPassword("");
+		dataSource.setMaxSize(MAX_SIZE);
+		dataSource.setMaxWait(10000);
+	}
+
+	@After
+	public void tearDown() {
+		dataSource.close();
+	}
+
+	@Test
+	public void concurrentBorrowAndReturnStayWithinMaxSize() throws Exception {
+		final int threads = 16;
+		final int iterations = 200;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < iterations; j++) {
+							Connection connection = dataSource.getConnection();
+							try {
+								execute(connection);
+								if (dataSource.getTotalCount() > MAX_SIZE) {
+									throw new AssertionError("连接总数超过上限：" + dataSource.getTotalCount());
+								}
+							} finally {
+								connection.close();
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(0, dataSource.getActiveCount());
+		assertEquals(threads * iterations, dataSource.getBorrowCount());
+		assertTrue(dataSource.getTotalCount() <= MAX_SIZE);
+	}
+
+	@Test
+	public void closeClosesIdleNowAndBorrowedOnReturn() throws Exception {
+		Connection idle = dataSource.getConnection();
+		Connection borrowed = dataSource.getConnection();
+		Connection idleReal = idle.unwrap(Connection.class);
+		Connection borrowedReal = borrowed.unwrap(Connection.class);
+		idle.close();
+		dataSource.close();
+		assertTrue(dataSource.isClosed());
+		assertTrue(idleReal.isClosed());
+		assertFalse(borrowedReal.isClosed());
+		// 借出的连接在关闭后仍然可以使用，直到归还
+		execute(borrowed);
+		borrowed.close();
+		assertTrue(borrowedReal.isClosed());
+		assertEquals(0, dataSource.getTotalCount());
+		assertEquals(0, dataSource.getActiveCount());
+		try {
+			dataSource.getConnection();
+			fail("关闭后不能再获取连接");
+		} catch (SQLException e) {
+			// 预期的异常
+		}
+	}
+
+	@Test
+	public void closeWhileBorrowingLeavesNoOpenConnection() throws Exception {
+		final Set<Connection> realConnections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						Connection connection;
+						try {
+							connection = dataSource.getConnection();
+						} catch (SQLException e) {
+							// 连接池已经关闭
+							return;
+						}
+						try {
+							realConnections.add(connection.unwrap(Connection.class));
+							execute(connection);
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						} finally {
+							try {
+								connection.close();
+							} catch (SQLException e) {
+								failure.compareAndSet(null, e);
+							}
+						}
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		Thread.sleep(200);
+		dataSource.close();
+		for (Thread worker : workers) {
+			worker.join(10000);
+			assertFalse("借用连接的线程没有结束", worker.isAlive());
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertFalse(realConnections.isEmpty());
+		for (Connection connection : realConnections) {
+			assertTrue("关闭后仍有物理连接没有关闭", connection.isClosed());
+		}
+		assertEquals(0, dataSource.getTotalCount());
+		assertEquals(0, dataSource.getActiveCount());
+	}
+
+	private static void execute(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("SELECT 1");
+		} finally {
+			statement.close();
+		}
+	}
+}
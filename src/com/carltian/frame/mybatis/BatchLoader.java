@@ -0,0 +1,150 @@
+package com.carltian.frame.mybatis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按键批量加载数据，将多次按键查询合并为一次查询。没有实现线程安全，一般在一次请求的范围内使用。<br/>
+ * 先通过{@link #load(Object)}登记需要的键，得到的{@link Deferred}在第一次取值时，会将此前登记的全部键合并为一次查询。
+ * 已经加载过的键直接返回之前的结果，不会重复查询。<br/>
+ * 对应的sqlmap需要接收键的List作为参数（在sqlmap中为“list”），并返回这些键对应的记录，每个键最多对应一条记录，例如：
+ * 
+ * <pre>
+ * &lt;select id="getByIds" resultType="User"&gt;
+ *   select * from user where id in
+ *   &lt;foreach collection="list" item="id" open="(" separator="," close=")"&gt;#{id}&lt;/foreach&gt;
+ * &lt;/select&gt;
+ * </pre>
+ * 
+ * @author Carl Tian
+ */
+public class BatchLoader<K, V> {
+
+	static public final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+	private final MyBatisManager manager;
+	private final String sqlmap;
+	private final KeyExtractor<K, V> keyExtractor;
+	private final int maxBatchSize;
+	private final Set<K> pendingKeys = new LinkedHashSet<K>();
+	private final Map<K, V> loaded = new HashMap<K, V>();
+
+	/**
+	 * @param manager
+	 *           用于执行查询的MyBatisManager
+	 * @param sqlmap
+	 *           按键的List批量查询的sqlmap名称
+	 * @param keyExtractor
+	 *           用于从查询结果中取出键
+	 * @param maxBatchSize
+	 *           一次查询最多包含的键的数量，超过时将分为多次查询
+	 */
+	BatchLoader(MyBatisManager manager, String sqlmap, KeyExtractor<K, V> keyExtractor, int maxBatchSize) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize必须大于0！");
+		}
+		this.manager = manager;
+		this.sqlmap = sqlmap;
+		this.keyExtractor = keyExtractor;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * 用于登记一个需要加载的键，此时不会查询数据库。
+	 * 
+	 * @param key
+	 *           需要加载的键
+	 * @return 延迟取值的结果
+	 */
+	public Deferred load(K key) {
+		if (!loaded.containsKey(key)) {
+			pendingKeys.add(key);
+		}
+		return new Deferred(key);
+	}
+
+	/**
+	 * 用于获取一个键对应的数据，此前登记的键会在同一次查询中一起加载。
+	 * 
+	 * @return 键对应的数据，没有数据时返回null
+	 */
+	public V get(K key) {
+		return load(key).get();
+	}
+
+	/**
+	 * 用于获取多个键对应的数据，全部键将在同一次查询中加载。
+	 * 
+	 * @return 键与数据的对应关系，按照参数的顺序排列，没有数据的键对应null
+	 */
+	public Map<K, V> getAll(Collection<K> keys) {
+		for (K key : keys) {
+			load(key);
+		}
+		dispatch();
+		Map<K, V> result = new LinkedHashMap<K, V>();
+		for (K key : keys) {
+			result.put(key, loaded.get(key));
+		}
+		return result;
+	}
+
+	/**
+	 * 用于立即加载全部已登记但尚未加载的键。
+	 */
+	public void dispatch() {
+		Iterator<K> iterator = pendingKeys.iterator();
+		while (iterator.hasNext()) {
+			List<K> batch = new ArrayList<K>(Math.min(pendingKeys.size(), maxBatchSize));
+			while (iterator.hasNext() && batch.size() < maxBatchSize) {
+				batch.add(iterator.next());
+			}
+			List<V> values = manager.selectList(sqlmap, batch);
+			// 没有数据的键也需要记录，防止重复查询
+			for (K key : batch) {
+				loaded.put(key, null);
+			}
+			for (V value : values) {
+				loaded.put(keyExtractor.getKey(value), value);
+			}
+		}
+		pendingKeys.clear();
+	}
+
+	/**
+	 * 用于清除已经加载的数据，之后再次请求时将重新查询数据库。
+	 */
+	public void clear() {
+		loaded.clear();
+	}
+
+	/**
+	 * 延迟取值的结果，第一次取值时才会查询数据库。
+	 */
+	public class Deferred {
+		private final K key;
+
+		private Deferred(K key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return 键对应的数据，没有数据时返回null
+		 */
+		public V get() {
+			if (!loaded.containsKey(key)) {
+				// 登记后可能被clear()清除，需要重新登记
+				pendingKeys.add(key);
+				dispatch();
+			}
+			return loaded.get(key);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.carltian.frame.mybatis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 按sqlmap或Mapper划分的隔离舱，每个隔离舱有各自自适应的并发上限（参见{@link ConcurrencyLimiter}），
+ * 避免个别慢语句占满连接池而拖慢其他语句。<br/>
+ * 配置格式为“名称=最大并发”，多项以逗号分隔，最大并发可以省略。名称可以是完整的sqlmap名称、命名空间（即Mapper接口的类名），
+ * 或以“*”结尾表示前缀匹配；匹配多项时依次以sqlmap名称、命名空间、最长的前缀为准。匹配同一项的语句共用一个隔离舱。
+ * 
+ * @author Carl Tian
+ */
+class Bulkheads {
+
+	static final int DEFAULT_MAX_LIMIT = 20;
+
+	// 用于在缓存中表示没有匹配的隔离舱
+	private static final ConcurrencyLimiter NONE = new ConcurrencyLimiter("", 1, 1);
+
+	private final Map<String, ConcurrencyLimiter> limiters = new LinkedHashMap<String, ConcurrencyLimiter>();
+	private final ConcurrentMap<String, ConcurrencyLimiter> resolved = new ConcurrentHashMap<String, ConcurrencyLimiter>();
+
+	/**
+	 * @param value
+	 *           隔离舱的配置
+	 * @param minLimit
+	 *           各隔离舱并发上限的最小值
+	 */
+	Bulkheads(String value, int minLimit) {
+		for (String item : value.split(",")) {
+			item = item.trim();
+			if (item.length() == 0) {
+				continue;
+			}
+			int index = item.lastIndexOf('=');
+			String name = (index < 0) ? item : item.substring(0, index).trim();
+			int maxLimit = DEFAULT_MAX_LIMIT;
+			if (index >= 0) {
+				try {
+					maxLimit = Integer.parseInt(item.substring(index + 1).trim());
+				} catch (NumberFormatException e) {
+					FrameLogger.error("隔离舱的格式不正确：" + item);
+					throw new RuntimeException("隔离舱的格式不正确：" + item, e);
+				}
+			}
+			limiters.put(name, new ConcurrencyLimiter(name, minLimit, maxLimit));
+		}
+	}
+
+	/**
+	 * 获取sqlmap所属的隔离舱，判断结果会被缓存。
+	 * 
+	 * @return 没有匹配的隔离舱时返回null
+	 */
+	ConcurrencyLimiter limiterOf(String statement) {
+		ConcurrencyLimiter result = resolved.get(statement);
+		if (result == null) {
+			result = match(statement);
+			resolved.put(statement, result);
+		}
+		return (result == NONE) ? null : result;
+	}
+
+	private ConcurrencyLimiter match(String statement) {
+		ConcurrencyLimiter result = limiters.get(statement);
+		if (result != null) {
+			return result;
+		}
+		int index = statement.lastIndexOf('.');
+		result = (index > 0) ? limiters.get(statement.substring(0, index)) : null;
+		if (result != null) {
+			return result;
+		}
+		int matched = -1;
+		for (Map.Entry<String, ConcurrencyLimiter> entry : limiters.entrySet()) {
+			String pattern = entry.getKey();
+			if (pattern.endsWith("*") && pattern.length() > matched
+					&& statement.startsWith(pattern.substring(0, pattern.length() - 1))) {
+				result = entry.getValue();
+				matched = pattern.length();
+			}
+		}
+		return (result == null) ? NONE : result;
+	}
+
+	/**
+	 * 获取各隔离舱的当前状态，用于运行统计。
+	 */
+	String[] getSummary() {
+		List<String> summary = new ArrayList<String>();
+		for (Map.Entry<String, ConcurrencyLimiter> entry : limiters.entrySet()) {
+			ConcurrencyLimiter limiter = entry.getValue();
+			summary.add(String.format("%s limit=%d inFlight=%d rejected=%d", entry.getKey(), limiter.getLimit(),
+					limiter.getInFlight(), limiter.getRejected()));
+		}
+		return summary.toArray(new String[summary.size()]);
+	}
+}
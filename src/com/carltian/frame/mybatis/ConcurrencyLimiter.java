@@ -0,0 +1,133 @@
+package com.carltian.frame.mybatis;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 自适应的并发限制，用于隔离舱。并发上限按语句的执行时间自动调整（参照TCP Vegas的延迟梯度）：
+ * 执行时间接近空闲时的最短时间时逐步放宽上限，明显变长（即数据库开始排队）时按比例收紧，上限在minLimit到maxLimit之间。<br/>
+ * 达到上限后，新的调用等待至多waitMillis毫秒，仍没有名额时抛出{@link RejectedExecutionException}。
+ * 
+ * @author Carl Tian
+ */
+class ConcurrencyLimiter {
+
+	// 执行时间在最短时间的该倍数以内时视为没有排队
+	private static final double TOLERANCE = 2.0;
+	// 每次调整时新上限所占的权重，用于平滑抖动
+	private static final double SMOOTHING = 0.2;
+	// 每隔多少个样本重新统计最短执行时间，以适应数据量等的变化
+	private static final int MIN_RTT_WINDOW = 1000;
+	// 梯度不低于该值时视为没有排队，才按上限的平方根放宽上限
+	private static final double GRADIENT_NEAR_ONE = 0.9;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private double limit;
+	private int inFlight;
+	private long minRtt = Long.MAX_VALUE;
+	private int samples;
+	private long rejected;
+
+	/**
+	 * @param name
+	 *           隔离舱的名称，用于日志
+	 * @param minLimit
+	 *           并发上限的最小值，大于maxLimit时以maxLimit为准
+	 * @param maxLimit
+	 *           并发上限的最大值，初始上限为其一半
+	 */
+	ConcurrencyLimiter(String name, int minLimit, int maxLimit) {
+		if (minLimit <= 0 || maxLimit <= 0) {
+			throw new IllegalArgumentException("隔离舱的并发上限必须大于0：" + name);
+		}
+		this.name = name;
+		this.minLimit = Math.min(minLimit, maxLimit);
+		this.maxLimit = maxLimit;
+		limit = Math.max(this.minLimit, (maxLimit + 1) / 2);
+	}
+
+	/**
+	 * 占用一个并发名额。
+	 * 
+	 * @param waitMillis
+	 *           没有名额时最多等待的时间（毫秒），小于等于0时不等待
+	 * @return 名额的开始时间，需要传给{@link #release(long, boolean)}
+	 */
+	synchronized long acquire(long waitMillis) {
+		if (inFlight >= (int) limit) {
+			long deadline = System.currentTimeMillis() + waitMillis;
+			boolean interrupted = false;
+			while (inFlight >= (int) limit) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0 || interrupted) {
+					rejected++;
+					if (interrupted) {
+						Thread.currentThread().interrupt();
+					}
+					throw new RejectedExecutionException("隔离舱的并发已达上限（" + (int) limit + "）：" + name);
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		inFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * 释放名额，并根据本次的执行时间调整上限。
+	 * 
+	 * @param start
+	 *           {@link #acquire(long)}的返回值
+	 * @param sample
+	 *           是否将本次的执行时间用于调整上限；执行失败（如SQL错误）的时间不能反映数据库的负载，不应使用
+	 */
+	void release(long start, boolean sample) {
+		long rtt = System.nanoTime() - start;
+		synchronized (this) {
+			int used = inFlight--;
+			if (sample) {
+				update(rtt, used);
+			}
+			notifyAll();
+		}
+	}
+
+	private void update(long rtt, int used) {
+		if (++samples >= MIN_RTT_WINDOW) {
+			samples = 0;
+			minRtt = rtt;
+		} else if (rtt < minRtt) {
+			minRtt = rtt;
+		}
+		// 梯度为1表示没有排队，最低降到一半，避免一次异常的样本使上限骤降
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / Math.max(rtt, 1)));
+		double newLimit = limit * gradient;
+		if (gradient >= GRADIENT_NEAR_ONE) {
+			// 只在没有排队时允许排队余量，否则持续排队时上限会停在平方根项决定的值（约为4）而不再下降
+			newLimit += Math.sqrt(limit);
+		}
+		// 并发远未用满时，执行时间并不能说明更高的并发是否安全，不放宽上限
+		if (newLimit > limit && used < limit / 2) {
+			return;
+		}
+		newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	synchronized long getRejected() {
+		return rejected;
+	}
+}
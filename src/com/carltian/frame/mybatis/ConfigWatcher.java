@@ -0,0 +1,84 @@
+package com.carltian.frame.mybatis;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 定时检查配置文件（包括mapper文件）的修改时间，发生变化时通知重新加载。只能检查文件系统中的文件。
+ * 
+ * @author Carl Tian
+ */
+class ConfigWatcher {
+
+	private final long intervalMillis;
+	private final Runnable onChange;
+	private final Thread thread;
+	private volatile List<File> files = new ArrayList<File>();
+	private volatile long fingerprint;
+
+	/**
+	 * @param intervalMillis
+	 *           检查的间隔（毫秒）
+	 * @param onChange
+	 *           文件发生变化时调用，在检查线程中执行
+	 */
+	ConfigWatcher(long intervalMillis, Runnable onChange) {
+		this.intervalMillis = intervalMillis;
+		this.onChange = onChange;
+		thread = new Thread(new Checker(), "MyBatisManager-config-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 设置需要检查的文件，并以其当前的修改时间作为基准。
+	 */
+	void watch(Collection<File> files) {
+		List<File> list = new ArrayList<File>(files);
+		fingerprint = fingerprintOf(list);
+		this.files = list;
+	}
+
+	/**
+	 * 停止检查，不等待正在进行的重新加载结束。
+	 */
+	void stop() {
+		thread.interrupt();
+	}
+
+	private static long fingerprintOf(List<File> files) {
+		long result = 0;
+		for (File file : files) {
+			// 文件被删除时lastModified为0，同样视为变化
+			result = 31 * result + file.lastModified();
+		}
+		return result;
+	}
+
+	private class Checker implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					return;
+				}
+				long current = fingerprintOf(files);
+				if (current != fingerprint) {
+					// 无论加载是否成功，都以本次的修改时间作为基准，避免反复加载有错误的配置
+					fingerprint = current;
+					try {
+						onChange.run();
+					} catch (RuntimeException e) {
+						FrameLogger.error("重新加载配置失败！", e);
+					}
+				}
+			}
+		}
+	}
+}
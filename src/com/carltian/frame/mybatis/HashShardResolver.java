@@ -0,0 +1,39 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 默认的分片策略，按分片键的hashCode取模确定分片。<br/>
+ * 默认只支持显式指定的分片键，需要按参数分片时，继承该类并实现{@link #getShardKey(String, Object)}。
+ * 
+ * @author Carl Tian
+ */
+public class HashShardResolver implements ShardResolver {
+
+	@Override
+	public int getShard(String sqlmap, Object parameter, int shardCount) {
+		Object shardKey = getShardKey(sqlmap, parameter);
+		return (shardKey == null) ? -1 : getShardByKey(shardKey, shardCount);
+	}
+
+	@Override
+	public int getShardByKey(Object shardKey, int shardCount) {
+		if (shardKey == null) {
+			return -1;
+		}
+		int index = shardKey.hashCode() % shardCount;
+		return (index < 0) ? index + shardCount : index;
+	}
+
+	/**
+	 * 从参数中取出分片键。
+	 * 
+	 * @param sqlmap
+	 *           sqlmap名称
+	 * @param parameter
+	 *           参数对象
+	 * @return 分片键，返回null表示该操作不分片，默认总是返回null
+	 */
+	protected Object getShardKey(String sqlmap, Object parameter) {
+		return null;
+	}
+
+}
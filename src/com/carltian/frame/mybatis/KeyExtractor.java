@@ -0,0 +1,19 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 用于从查询结果中取出其对应的键，参见{@link BatchLoader}及{@link KeysetIterator}。
+ * 
+ * @author Carl Tian
+ */
+public interface KeyExtractor<K, V> {
+
+	/**
+	 * 取出查询结果对应的键，返回的键必须与请求时使用的键相等（equals），注意类型也需要一致（如Long与Integer）。
+	 * 
+	 * @param value
+	 *           一条查询结果
+	 * @return 查询结果对应的键
+	 */
+	public abstract K getKey(V value);
+
+}
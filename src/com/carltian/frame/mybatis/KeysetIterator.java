@@ -0,0 +1,95 @@
+package com.carltian.frame.mybatis;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 以键集（seek）方式分页遍历查询结果，每页以上一页最后一条记录的键作为起点查询，而不是跳过前面的记录，
+ * 所以无论翻到多深，每页的代价都相同。在遍历到需要时才查询下一页，没有实现线程安全。<br/>
+ * 对应的sqlmap接收{@link KeysetPage}作为参数，需要按键排序，并只返回键大于lastKey的最多pageSize条记录，例如：
+ * 
+ * <pre>
+ * &lt;select id="listAfter" resultType="User"&gt;
+ *   select * from user where status = #{parameter.status}
+ *   &lt;if test="lastKey != null"&gt;and id &gt; #{lastKey}&lt;/if&gt;
+ *   order by id limit #{pageSize}
+ * &lt;/select&gt;
+ * </pre>
+ * 
+ * 某一页的记录数少于pageSize时遍历结束。
+ * 
+ * @author Carl Tian
+ */
+public abstract class KeysetIterator<K, V> implements Iterator<V> {
+
+	private final Object parameter;
+	private final KeyExtractor<K, V> keyExtractor;
+	private final int pageSize;
+	private K lastKey;
+	private Iterator<V> page = Collections.<V> emptyList().iterator();
+	private boolean lastPage;
+
+	/**
+	 * @param parameter
+	 *           查询参数，通过{@link KeysetPage#getParameter()}传给sqlmap
+	 * @param keyExtractor
+	 *           用于从记录中取出键
+	 * @param pageSize
+	 *           每页的最大条数
+	 */
+	KeysetIterator(Object parameter, KeyExtractor<K, V> keyExtractor, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize必须大于0！");
+		}
+		this.parameter = parameter;
+		this.keyExtractor = keyExtractor;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * 查询一页记录。
+	 */
+	abstract List<V> selectPage(KeysetPage<K> keysetPage);
+
+	@Override
+	public boolean hasNext() {
+		while (!page.hasNext()) {
+			if (lastPage) {
+				return false;
+			}
+			List<V> values = selectPage(new KeysetPage<K>(parameter, lastKey, pageSize));
+			if (values.size() < pageSize) {
+				lastPage = true;
+			}
+			if (!values.isEmpty()) {
+				lastKey = keyExtractor.getKey(values.get(values.size() - 1));
+			}
+			page = values.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public V next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * 获取已经加载的最后一条记录的键，可以保存下来用于中断后继续遍历。
+	 * 
+	 * @return 已经加载的最后一条记录的键，尚未加载时为null
+	 */
+	public K getLastKey() {
+		return lastKey;
+	}
+}
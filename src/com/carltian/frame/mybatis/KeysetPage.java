@@ -0,0 +1,40 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 键集分页的查询参数，由{@link KeysetIterator}传给sqlmap，在sqlmap中可以通过lastKey、pageSize及parameter访问。
+ * 
+ * @author Carl Tian
+ */
+public class KeysetPage<K> {
+
+	private final Object parameter;
+	private final K lastKey;
+	private final int pageSize;
+
+	KeysetPage(Object parameter, K lastKey, int pageSize) {
+		this.parameter = parameter;
+		this.lastKey = lastKey;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * 获取调用者传入的查询参数。
+	 */
+	public Object getParameter() {
+		return parameter;
+	}
+
+	/**
+	 * 获取上一页最后一条记录的键，第一页时为null。
+	 */
+	public K getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * 获取每页的最大条数。
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+}
@@ -0,0 +1,132 @@
+package com.carltian.frame.mybatis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时统计，记录次数、失败次数、总耗时、最大耗时以及耗时分布。<br/>
+ * 全部计数均使用原子变量，记录时不加锁。
+ * 
+ * @author Carl Tian
+ */
+class LatencyStats {
+
+	/**
+	 * 耗时分布各区间的上限（毫秒），超过最后一个上限的记录计入最后一个区间之后的溢出区间。
+	 */
+	static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+	private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS.length];
+	static {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			BUCKET_BOUNDS_NANOS[i] = BUCKET_BOUNDS[i] * 1000000L;
+		}
+	}
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+	/**
+	 * 记录一次耗时。
+	 * 
+	 * @param nanos
+	 *           耗时（纳秒）
+	 * @param success
+	 *           是否执行成功
+	 */
+	void record(long nanos, boolean success) {
+		count.incrementAndGet();
+		if (!success) {
+			errors.incrementAndGet();
+		}
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * @return 平均耗时（毫秒）
+	 */
+	double getAverage() {
+		long n = count.get();
+		return (n == 0) ? 0 : totalNanos.get() / 1000000.0 / n;
+	}
+
+	/**
+	 * @return 最大耗时（毫秒）
+	 */
+	long getMax() {
+		return maxNanos.get() / 1000000L;
+	}
+
+	/**
+	 * @return 各区间的记录次数，区间上限参见{@link #BUCKET_BOUNDS}
+	 */
+	long[] getHistogram() {
+		long[] histogram = new long[buckets.length()];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = buckets.get(i);
+		}
+		return histogram;
+	}
+
+	/**
+	 * 根据耗时分布估算百分位耗时。
+	 * 
+	 * @param percentile
+	 *           百分位，取值范围为(0, 1]
+	 * @return 百分位所在区间的上限（毫秒），位于溢出区间时返回最大耗时
+	 */
+	long getPercentile(double percentile) {
+		long[] histogram = getHistogram();
+		long total = 0;
+		for (long n : histogram) {
+			total += n;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(total * percentile);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			cumulative += histogram[i];
+			if (cumulative >= target) {
+				return BUCKET_BOUNDS[i];
+			}
+		}
+		return getMax();
+	}
+
+	void reset() {
+		count.set(0);
+		errors.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+	}
+
+	private static int bucketOf(long nanos) {
+		for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+			if (nanos <= BUCKET_BOUNDS_NANOS[i]) {
+				return i;
+			}
+		}
+		return BUCKET_BOUNDS_NANOS.length;
+	}
+}
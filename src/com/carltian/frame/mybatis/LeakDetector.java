@@ -0,0 +1,132 @@
+package com.carltian.frame.mybatis;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.session.SqlSession;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 具名事务的连接泄漏检测。<br/>
+ * 事务打开连接时登记一个虚引用，事务正常关闭时注销；如果事务在关闭前被回收，虚引用会在回收后被放入引用队列，
+ * 由后台线程立即关闭其连接并报告泄漏。与finalize不同，被检测的事务对象不需要经过终结器队列。<br/>
+ * 可以按比例记录事务的创建位置，用于在报告泄漏时指出问题代码。
+ * 
+ * @author Carl Tian
+ */
+class LeakDetector {
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	// 虚引用本身必须保持可达，否则无法被放入引用队列
+	private final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+	private final int traceRate;
+	private final AtomicLong counter = new AtomicLong();
+	private final Thread reaper;
+
+	/**
+	 * @param traceRate
+	 *           每多少个事务记录一次创建位置，小于等于0时不记录
+	 */
+	LeakDetector(int traceRate) {
+		this.traceRate = traceRate;
+		reaper = new Thread(new Reaper(), "MyBatisManager-leak-detector");
+		reaper.setDaemon(true);
+		reaper.start();
+	}
+
+	/**
+	 * 停止后台线程，之后被回收的事务不再报告泄漏。
+	 */
+	void stop() {
+		reaper.interrupt();
+	}
+
+	/**
+	 * 按比例记录事务的创建位置，需要在事务创建时调用。
+	 * 
+	 * @return 创建位置，本次不需要记录时返回null
+	 */
+	Throwable allocationSite() {
+		if (traceRate > 0 && counter.getAndIncrement() % traceRate == 0) {
+			return new Throwable("具名事务的创建位置");
+		}
+		return null;
+	}
+
+	/**
+	 * 登记一个打开了连接的事务。
+	 * 
+	 * @param owner
+	 *           事务对象
+	 * @param session
+	 *           事务的Session
+	 * @param allocationSite
+	 *           事务的创建位置，可以为null
+	 * @return 登记信息，事务关闭时需要调用{@link Tracker#release()}注销
+	 */
+	Tracker track(Object owner, SqlSession session, Throwable allocationSite) {
+		Tracker tracker = new Tracker(owner, session, allocationSite);
+		trackers.add(tracker);
+		return tracker;
+	}
+
+	class Tracker extends PhantomReference<Object> {
+		private final SqlSession session;
+		private final long openTime = System.currentTimeMillis();
+		private final Throwable allocationSite;
+
+		private Tracker(Object owner, SqlSession session, Throwable allocationSite) {
+			super(owner, queue);
+			this.session = session;
+			this.allocationSite = allocationSite;
+		}
+
+		/**
+		 * 获取连接已被占用的时间（毫秒）。
+		 */
+		long getHoldTime() {
+			return System.currentTimeMillis() - openTime;
+		}
+
+		/**
+		 * 事务正常关闭时注销。
+		 */
+		void release() {
+			trackers.remove(this);
+			clear();
+		}
+	}
+
+	private class Reaper implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				Tracker tracker;
+				try {
+					tracker = (Tracker) queue.remove();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (!trackers.remove(tracker)) {
+					continue;
+				}
+				String message = "检查到没有关闭连接的具名事务对象被销毁！连接已被占用" + tracker.getHoldTime() + "毫秒，请检查代码。";
+				if (tracker.allocationSite != null) {
+					FrameLogger.error(message, tracker.allocationSite);
+				} else {
+					FrameLogger.error(message + "（设置leakTraceRate可以记录事务的创建位置）");
+				}
+				try {
+					tracker.session.close();
+				} catch (RuntimeException e) {
+					FrameLogger.error("关闭泄漏的连接失败！", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.carltian.frame.mybatis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 最少并发策略，选择当前正在执行的查询最少的只读库。<br/>
+ * 并发数相同时从轮转的起点开始比较，避免总是命中第一个只读库。
+ * 
+ * @author Carl Tian
+ */
+public class LeastInFlightPolicy implements LoadBalancePolicy {
+
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Override
+	public int select(List<ReadReplica> replicas) {
+		int size = replicas.size();
+		int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+		int selected = start;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			int index = (start + i) % size;
+			int inFlight = replicas.get(index).getInFlight();
+			if (inFlight < min) {
+				min = inFlight;
+				selected = index;
+			}
+		}
+		return selected;
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.carltian.frame.mybatis;
+
+import java.util.List;
+
+/**
+ * 只读库的负载均衡策略，用于为非事务的查询操作选择一个只读库。<br/>
+ * 实现类必须线程安全，并提供一个公有的无参构造函数。
+ * 
+ * @author Carl Tian
+ */
+public interface LoadBalancePolicy {
+
+	/**
+	 * 从只读库列表中选择一个用于本次查询。
+	 * 
+	 * @param replicas
+	 *           全部只读库，不会为空
+	 * @return 被选中的只读库在列表中的下标
+	 */
+	public abstract int select(List<ReadReplica> replicas);
+
+}
@@ -0,0 +1,85 @@
+package com.carltian.frame.mybatis;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Mapper函数的查询结果缓存，每个标注了{@link com.carltian.frame.mybatis.annotation.Cached}的函数使用独立的缓存，
+ * 各自按数量及时间淘汰，并按命名空间统一失效。
+ * 
+ * @author Carl Tian
+ */
+class MapperCaches {
+
+	private final ConcurrentMap<String, List<ResultCache>> caches = new ConcurrentHashMap<String, List<ResultCache>>();
+	// 各语句的缓存，保证同一语句只创建一个缓存
+	private final ConcurrentMap<String, ResultCache> statements = new ConcurrentHashMap<String, ResultCache>();
+
+	/**
+	 * 获取一个函数的缓存，没有时创建并登记到命名空间下。<br/>
+	 * 多个线程同时第一次调用同一函数时只有一个缓存被创建并登记，不会在命名空间下留下不再使用的缓存。
+	 * 
+	 * @param namespace
+	 *           缓存所属的命名空间
+	 * @param statement
+	 *           函数对应的语句名称
+	 * @param maxEntries
+	 *           最大缓存条数
+	 * @param ttlMillis
+	 *           缓存的有效时间（毫秒），小于等于0时不按时间淘汰
+	 * @return 该函数的缓存
+	 */
+	ResultCache create(String namespace, String statement, int maxEntries, long ttlMillis) {
+		ResultCache cache = statements.get(statement);
+		if (cache != null) {
+			return cache;
+		}
+		cache = new ResultCache(maxEntries, ttlMillis);
+		ResultCache existing = statements.putIfAbsent(statement, cache);
+		if (existing != null) {
+			return existing;
+		}
+		List<ResultCache> list = caches.get(namespace);
+		if (list == null) {
+			list = new CopyOnWriteArrayList<ResultCache>();
+			List<ResultCache> existingList = caches.putIfAbsent(namespace, list);
+			if (existingList != null) {
+				list = existingList;
+			}
+		}
+		list.add(cache);
+		return cache;
+	}
+
+	/**
+	 * 使命名空间下全部函数的缓存失效。
+	 */
+	void evict(String namespace) {
+		List<ResultCache> list = caches.get(namespace);
+		if (list != null) {
+			for (ResultCache cache : list) {
+				cache.invalidate(namespace);
+			}
+		}
+	}
+
+	/**
+	 * 移除全部函数的缓存，用于重新加载配置后重新解析Mapper函数，届时各函数将创建新的缓存。
+	 */
+	void clear() {
+		for (String namespace : caches.keySet()) {
+			evict(namespace);
+		}
+		caches.clear();
+		statements.clear();
+	}
+
+	void evict(Collection<String> namespaces) {
+		for (String namespace : namespaces) {
+			evict(namespace);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.carltian.frame.mybatis;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * MyBatis插件，用于向{@link MyBatisMetrics}记录语句的执行情况及Session的占用时间，并向{@link SlowStatementLog}报告慢语句。<br/>
+ * 每个Session的Executor被直接委托的{@link InstrumentedExecutor}包装，不使用动态代理和反射，
+ * 因此可以统计到包括事务中的Mapper在内的全部操作。
+ * 
+ * @author Carl Tian
+ */
+class MetricsInterceptor implements Interceptor {
+
+	private final MyBatisMetrics metrics;
+	private final SlowStatementLog slowStatementLog;
+
+	/**
+	 * @param metrics
+	 *           运行统计
+	 * @param slowStatementLog
+	 *           慢语句日志，为null时不记录慢语句
+	 */
+	MetricsInterceptor(MyBatisMetrics metrics, SlowStatementLog slowStatementLog) {
+		this.metrics = metrics;
+		this.slowStatementLog = slowStatementLog;
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		return invocation.proceed();
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		if (target instanceof Executor) {
+			return new InstrumentedExecutor((Executor) target, metrics, slowStatementLog);
+		}
+		return target;
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+
+	/**
+	 * 记录统计信息的Executor，Executor与Session一一对应，所以其存活时间即为Session的占用时间。
+	 */
+	private static class InstrumentedExecutor implements Executor {
+		private final Executor delegate;
+		private final MyBatisMetrics metrics;
+		private final SlowStatementLog slowStatementLog;
+		private final long openTime = System.nanoTime();
+
+		private InstrumentedExecutor(Executor delegate, MyBatisMetrics metrics, SlowStatementLog slowStatementLog) {
+			this.delegate = delegate;
+			this.metrics = metrics;
+			this.slowStatementLog = slowStatementLog;
+			metrics.recordSessionOpen();
+		}
+
+		private void record(MappedStatement ms, Object parameter, long start, boolean success) {
+			long nanos = System.nanoTime() - start;
+			metrics.recordStatement(ms.getId(), nanos, success);
+			if (slowStatementLog != null) {
+				slowStatementLog.record(ms, parameter, nanos);
+			}
+		}
+
+		@Override
+		public int update(MappedStatement ms, Object parameter) throws SQLException {
+			long start = System.nanoTime();
+			boolean success = false;
+			try {
+				int result = delegate.update(ms, parameter);
+				success = true;
+				return result;
+			} finally {
+				record(ms, parameter, start, success);
+			}
+		}
+
+		@Override
+		public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler,
+				CacheKey cacheKey, BoundSql boundSql) throws SQLException {
+			long start = System.nanoTime();
+			boolean success = false;
+			try {
+				List<E> result = delegate.query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
+				success = true;
+				return result;
+			} finally {
+				record(ms, parameter, start, success);
+			}
+		}
+
+		@Override
+		public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler)
+				throws SQLException {
+			long start = System.nanoTime();
+			boolean success = false;
+			try {
+				List<E> result = delegate.query(ms, parameter, rowBounds, resultHandler);
+				success = true;
+				return result;
+			} finally {
+				record(ms, parameter, start, success);
+			}
+		}
+
+		@Override
+		public List<BatchResult> flushStatements() throws SQLException {
+			return delegate.flushStatements();
+		}
+
+		@Override
+		public void commit(boolean required) throws SQLException {
+			delegate.commit(required);
+		}
+
+		@Override
+		public void rollback(boolean required) throws SQLException {
+			delegate.rollback(required);
+		}
+
+		@Override
+		public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+			return delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+		}
+
+		@Override
+		public boolean isCached(MappedStatement ms, CacheKey key) {
+			return delegate.isCached(ms, key);
+		}
+
+		@Override
+		public void clearLocalCache() {
+			delegate.clearLocalCache();
+		}
+
+		@Override
+		public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+			delegate.deferLoad(ms, resultObject, property, key, targetType);
+		}
+
+		@Override
+		public Transaction getTransaction() {
+			return delegate.getTransaction();
+		}
+
+		@Override
+		public void close(boolean forceRollback) {
+			try {
+				delegate.close(forceRollback);
+			} finally {
+				metrics.recordSessionClose(System.nanoTime() - openTime);
+			}
+		}
+
+		@Override
+		public boolean isClosed() {
+			return delegate.isClosed();
+		}
+	}
+}
@@ -1,6 +1,13 @@
 package com.carltian.frame.mybatis;
 
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
 
 import com.carltian.frame.db.DatabaseManager;
 
@@ -10,12 +17,32 @@ public interface MyBatisManager extends DatabaseManager {
 
 	public abstract void closeSharedSession();
 
+	public abstract <T> T runWithSharedSession(Callable<T> task) throws Exception;
+
+	public abstract <T> T runWithSharedSession(SessionCallback<T> callback) throws Exception;
+
+	public abstract <T> Callable<T> propagateSharedSession(Callable<T> task);
+
 	public abstract <T> T getMapper(Class<T> clazz);
 
+	public abstract <A> A getAsyncMapper(Class<A> asyncInterface, Class<?> mapperClass);
+
 	public abstract Transaction getTransaction();
 
 	public abstract Transaction getTransaction(boolean autoClose);
 
+	public abstract Transaction getTransaction(ExecutorType executorType);
+
+	public abstract Transaction getTransaction(boolean autoClose, ExecutorType executorType);
+
+	public abstract Transaction getTransaction(Propagation propagation);
+
+	public abstract Transaction getTransaction(Propagation propagation, ExecutorType executorType);
+
+	public abstract Transaction getShardTransaction(Object shardKey);
+
+	public abstract Transaction getShardTransaction(Object shardKey, ExecutorType executorType);
+
 	public abstract <T> T selectOne(String sqlmap);
 
 	public abstract <T> T selectOne(String sqlmap, Object parameter);
@@ -24,6 +51,23 @@ public interface MyBatisManager extends DatabaseManager {
 
 	public abstract <E> List<E> selectList(String sqlmap, Object parameter);
 
+	public abstract <E> List<E> selectListFromShards(String sqlmap, Object parameter);
+
+	public abstract <E> List<E> selectListFromShards(String sqlmap, Object parameter, Comparator<? super E> comparator);
+
+	public abstract void select(String sqlmap, ResultHandler handler);
+
+	public abstract void select(String sqlmap, Object parameter, ResultHandler handler);
+
+	public abstract void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler);
+
+	public abstract <K, V> BatchLoader<K, V> getBatchLoader(String sqlmap, KeyExtractor<K, V> keyExtractor);
+
+	public abstract <K, V> BatchLoader<K, V> getBatchLoader(String sqlmap, KeyExtractor<K, V> keyExtractor, int maxBatchSize);
+
+	public abstract <K, V> KeysetIterator<K, V> selectByKeyset(String sqlmap, Object parameter, KeyExtractor<K, V> keyExtractor,
+			int pageSize);
+
 	public abstract int insert(String sqlmap);
 
 	public abstract int insert(String sqlmap, Object parameter);
@@ -32,8 +76,42 @@ public interface MyBatisManager extends DatabaseManager {
 
 	public abstract int update(String sqlmap, Object parameter);
 
+	public abstract int insertAll(String sqlmap, Collection<?> parameters);
+
+	public abstract int insertAll(String sqlmap, Collection<?> parameters, int chunkSize);
+
+	public abstract int updateAll(String sqlmap, Collection<?> parameters);
+
+	public abstract int updateAll(String sqlmap, Collection<?> parameters, int chunkSize);
+
+	public abstract void insertLater(String sqlmap, Object parameter);
+
+	public abstract void flushPendingWrites();
+
 	public abstract int delete(String sqlmap);
 
 	public abstract int delete(String sqlmap, Object parameter);
 
+	public abstract <T> Future<T> submit(Callable<T> task);
+
+	public abstract <T> Future<T> selectOneAsync(String sqlmap);
+
+	public abstract <T> Future<T> selectOneAsync(String sqlmap, Object parameter);
+
+	public abstract <E> Future<List<E>> selectListAsync(String sqlmap);
+
+	public abstract <E> Future<List<E>> selectListAsync(String sqlmap, Object parameter);
+
+	public abstract Future<Integer> insertAsync(String sqlmap);
+
+	public abstract Future<Integer> insertAsync(String sqlmap, Object parameter);
+
+	public abstract Future<Integer> updateAsync(String sqlmap);
+
+	public abstract Future<Integer> updateAsync(String sqlmap, Object parameter);
+
+	public abstract Future<Integer> deleteAsync(String sqlmap);
+
+	public abstract Future<Integer> deleteAsync(String sqlmap, Object parameter);
+
 }
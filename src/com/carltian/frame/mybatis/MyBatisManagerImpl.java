@@ -1,15 +1,58 @@
 package com.carltian.frame.mybatis;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -19,6 +62,8 @@ import com.carltian.frame.container.ContainerImpl;
 import com.carltian.frame.container.annotation.ContainerConstructor;
 import com.carltian.frame.container.annotation.InitArg;
 import com.carltian.frame.container.annotation.Resource;
+import com.carltian.frame.mybatis.annotation.Cached;
+import com.carltian.frame.mybatis.annotation.Evicts;
 import com.carltian.frame.mybatis.annotation.Mapper;
 import com.carltian.frame.util.FrameLogger;
 
@@ -34,19 +79,282 @@ import com.carltian.frame.util.FrameLogger;
  */
 public class MyBatisManagerImpl implements MyBatisManager {
 	static public final String DEFAULT_CONFIG_PATH = "/WEB-INF/mybatis.xml";
+	static public final int DEFAULT_BATCH_SIZE = 1000;
+	static public final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+	static public final int DEFAULT_SLOW_LOG_RATE = 10;
+	static public final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	static public final int DEFAULT_WRITE_BEHIND_QUEUE_SIZE = 10000;
+	static public final int DEFAULT_WRITE_BEHIND_INTERVAL = 1000;
 
 	private final SqlSessionFactory sqlSessionFactory;
-	private final ThreadLocal<SqlSession> sharedSession = new ThreadLocal<SqlSession>();
+	// 延迟初始化时只读库会在后台陆续加入，所以使用线程安全的List
+	private final List<ReadReplica> replicas = new CopyOnWriteArrayList<ReadReplica>();
+	private final LoadBalancePolicy loadBalancePolicy;
+	// 分片，初始化完成后不再改变
+	private final List<SqlSessionFactory> shards = new ArrayList<SqlSessionFactory>();
+	private final ShardResolver shardResolver;
+	private final ResultCache resultCache;
+	private final SingleFlight singleFlight;
+	// 按sqlmap或Mapper划分的隔离舱，未配置时为null
+	private final Bulkheads bulkheads;
+	private final long bulkheadWait;
+	// 通过注解声明的Mapper函数缓存，以及各Mapper已解析的函数
+	private final MapperCaches mapperCaches = new MapperCaches();
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MapperInvoker>> mapperInvokers = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, MapperInvoker>>();
+	private final StatementInterceptor statementInterceptor = new StatementInterceptor();
+	private final MyBatisMetrics metrics = new MyBatisMetrics();
+	// 运行统计在JMX中的名称，注册失败时为null
+	private final ObjectName metricsName;
+	private final MetricsInterceptor metricsInterceptor;
+	private final StatementCacheInterceptor statementCacheInterceptor;
+	private final boolean reuseStatements;
+	private final Map<String, Integer> statementTimeouts;
+	private final ExecutorService asyncExecutor;
+	private volatile Executor callbackExecutor;
+	private final LeakDetector leakDetector;
+	// 配置的热加载，未开启时为null
+	private final ReloadableSqlSessionFactory reloadableFactory;
+	private final File configFile;
+	private final ConfigWatcher configWatcher;
+	// 延迟写入队列，写入线程在第一次使用时启动
+	private final WriteBehindQueue writeBehindQueue;
+	// 当前线程所在的共享Session作用域，只在作用域的执行期间绑定
+	private final ThreadLocal<SessionScope> sharedScope = new ThreadLocal<SessionScope>();
+	// 当前线程最内层的已打开连接的事务，用于事务的传播；使用弱引用，不影响对未关闭事务的泄漏检测
+	private final ThreadLocal<WeakReference<DefaultTransaction>> currentTransaction = new ThreadLocal<WeakReference<DefaultTransaction>>();
 
+	/**
+	 * @param configPath
+	 *           主库的配置文件路径，默认为{@value #DEFAULT_CONFIG_PATH}
+	 * @param replicaPaths
+	 *           只读库的配置文件路径，多个路径以逗号分隔，为空时全部操作都使用主库
+	 * @param policyClass
+	 *           只读库负载均衡策略的类名，需实现{@link LoadBalancePolicy}，默认为{@link RoundRobinPolicy}
+	 * @param cacheSize
+	 *           非事务查询结果缓存的最大条数，为空或0时不使用缓存。缓存命中时selectOne返回的是共享的结果对象，
+	 *           selectList返回的List是副本但其中的元素是共享的，调用者不应修改缓存的查询结果
+	 * @param cacheTtl
+	 *           查询结果缓存的有效时间（秒），为空或0时只按数量淘汰
+	 * @param asyncPoolSize
+	 *           执行异步操作的线程数，默认为CPU核数的两倍
+	 * @param asyncThreadFactory
+	 *           创建异步线程的{@link ThreadFactory}的类名，需要有无参的构造函数，默认创建守护线程。
+	 *           在Java 21以上可以指定创建虚拟线程的实现（如返回Thread.ofVirtual().factory()所创建线程的包装类），
+	 *           此时线程数仍受asyncPoolSize限制，用于限制对数据库的并发
+	 * @param asyncQueueSize
+	 *           等待执行的异步操作的最大数量，默认为{@value #DEFAULT_ASYNC_QUEUE_SIZE}，队列满时提交异步操作将抛出
+	 *           {@link java.util.concurrent.RejectedExecutionException}
+	 * @param lazyInit
+	 *           为true时不等待只读库初始化完成，只读库在后台初始化完成后才开始分担查询，在此之前全部查询都使用主库。
+	 *           主库的配置仍在初始化线程中解析，Mapper仍在初始化时全部注册（每个Mapper只创建一个代理对象，
+	 *           函数在第一次调用时才解析），所以只有主库时没有效果。后台初始化失败的只读库只记录日志，
+	 *           仍在初始化及初始化失败的只读库数量可以通过JMX的运行统计查看
+	 * @param leakTraceRate
+	 *           每多少个具名事务记录一次创建位置，用于在检测到连接泄漏时指出问题代码，为空或0时不记录
+	 * @param slowThreshold
+	 *           慢语句的阈值（毫秒），执行时间超过该值的语句将被记录到日志中，为空或0时不记录
+	 * @param slowLogRate
+	 *           每秒输出的慢语句日志条数，慢语句更多时按频率及耗时抽样，且不超过该条数，默认为{@value #DEFAULT_SLOW_LOG_RATE}
+	 * @param statementTimeouts
+	 *           各语句的超时时间（秒），格式为“sqlmap名称=秒数”，多项以逗号分隔；名称可以以“*”结尾表示前缀匹配，
+	 *           单独的“*”表示全部语句，匹配多项时以最长的为准。该设置优先于sqlmap中的timeout属性
+	 * @param singleFlight
+	 *           需要合并相同并发查询的sqlmap名称，多项以逗号分隔，名称可以以“*”结尾表示前缀匹配。只对不在事务及共享Session中的查询生效，
+	 *           同时执行的相同查询（sqlmap名称及参数都相同）只访问一次数据库，其余调用者共享该结果：selectList返回的List是各自的副本，
+	 *           但其中的元素以及selectOne返回的对象是共享的，调用者不应修改。参数对象需要正确实现equals和hashCode
+	 * @param shardPaths
+	 *           分片的配置文件路径，多个路径以逗号分隔，按顺序编号。为空时不分片；各分片需要包含与主库相同的sqlmap
+	 * @param shardResolverClass
+	 *           分片策略的类名，需实现{@link ShardResolver}，默认为{@link HashShardResolver}
+	 * @param reuseStatements
+	 *           为true时共享Session使用{@link ExecutorType#REUSE}，同一Session中重复执行的语句只预编译一次
+	 * @param statementCacheSize
+	 *           使用{@link ExecutorType#REUSE}的Session（共享Session及以该类型开启的事务）最多缓存的语句数量，超出时关闭最久未使用的语句，
+	 *           默认为{@value #DEFAULT_STATEMENT_CACHE_SIZE}，0表示不限制
+	 * @param reloadInterval
+	 *           检查主库配置文件（包括其中的mapper文件）是否修改的间隔（秒），修改后在后台重新加载，参见{@link #reload()}。
+	 *           为空或0时不检查；配置文件需要位于文件系统中（war包需要解压部署）
+	 * @param writeBehindQueueSize
+	 *           延迟写入（{@link #insertLater(String, Object)}）队列的容量，默认为{@value #DEFAULT_WRITE_BEHIND_QUEUE_SIZE}
+	 * @param writeBehindBatchSize
+	 *           延迟写入每次批量执行并提交的最大记录数，默认为{@value #DEFAULT_BATCH_SIZE}
+	 * @param writeBehindInterval
+	 *           延迟写入的记录最多等待多久（毫秒）即写入，默认为{@value #DEFAULT_WRITE_BEHIND_INTERVAL}
+	 * @param writeBehindOverflow
+	 *           延迟写入队列已满时的处理方式：block（等待，默认）、discard（丢弃）、callerRuns（在调用者的线程中直接写入）、
+	 *           reject（抛出{@link java.util.concurrent.RejectedExecutionException}）
+	 * @param bulkheads
+	 *           隔离舱，格式为“名称=最大并发”，多项以逗号分隔，最大并发默认为20；名称可以是sqlmap名称、Mapper接口的类名，
+	 *           或以“*”结尾表示前缀匹配。各隔离舱的并发上限按语句的执行时间在bulkheadMinLimit到最大并发之间自动调整，
+	 *           超出上限的非事务操作（包括Mapper及共享Session中的操作）将等待或失败；共享Session已占用连接，等待期间连接不被释放。
+	 *           事务中的操作不受限制。为空时不限制
+	 * @param bulkheadMinLimit
+	 *           隔离舱并发上限的最小值，数据库持续排队时上限降至该值，默认为1
+	 * @param bulkheadWait
+	 *           超出隔离舱的上限时最多等待的时间（毫秒），超时后抛出{@link java.util.concurrent.RejectedExecutionException}，
+	 *           为空或0时立即抛出
+	 * @param container
+	 *           容器，为null时不注册Mapper（如在容器之外使用时）
+	 */
 	@ContainerConstructor
-	public MyBatisManagerImpl(@InitArg("config") String configPath, @Resource ContainerImpl container) {
+	public MyBatisManagerImpl(@InitArg("config") String configPath, @InitArg("replicas") String replicaPaths,
+			@InitArg("loadBalancePolicy") String policyClass, @InitArg("cacheSize") String cacheSize,
+			@InitArg("cacheTtl") String cacheTtl, @InitArg("asyncPoolSize") String asyncPoolSize,
+			@InitArg("asyncThreadFactory") String asyncThreadFactory,
+			@InitArg("asyncQueueSize") String asyncQueueSize, @InitArg("lazyInit") String lazyInit,
+			@InitArg("leakTraceRate") String leakTraceRate, @InitArg("slowThreshold") String slowThreshold,
+			@InitArg("slowLogRate") String slowLogRate, @InitArg("statementTimeouts") String statementTimeouts,
+			@InitArg("singleFlight") String singleFlight, @InitArg("shards") String shardPaths,
+			@InitArg("shardResolver") String shardResolverClass, @InitArg("reuseStatements") String reuseStatements,
+			@InitArg("statementCacheSize") String statementCacheSize, @InitArg("reloadInterval") String reloadInterval,
+			@InitArg("writeBehindQueueSize") String writeBehindQueueSize,
+			@InitArg("writeBehindBatchSize") String writeBehindBatchSize,
+			@InitArg("writeBehindInterval") String writeBehindInterval,
+			@InitArg("writeBehindOverflow") String writeBehindOverflow, @InitArg("bulkheads") String bulkheads,
+			@InitArg("bulkheadMinLimit") String bulkheadMinLimit, @InitArg("bulkheadWait") String bulkheadWait,
+			@Resource ContainerImpl container) {
 		if (configPath == null || "".equals(configPath)) {
 			configPath = DEFAULT_CONFIG_PATH;
 		}
-		InputStream is = CurrentContext.getServletContext().getResourceAsStream(configPath);
-		sqlSessionFactory = (is == null) ? null : new SqlSessionFactoryBuilder().build(is);
-		if (sqlSessionFactory != null) {
-			// 注册Mapper
+		// 初始化异步操作的线程池，线程在空闲时会被回收
+		int poolSize = parseInt("asyncPoolSize", asyncPoolSize, Runtime.getRuntime().availableProcessors() * 2);
+		ThreadFactory threadFactory = newInstance(asyncThreadFactory, ThreadFactory.class, "异步线程工厂");
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(parseInt("asyncQueueSize", asyncQueueSize, DEFAULT_ASYNC_QUEUE_SIZE)),
+				(threadFactory == null) ? new AsyncThreadFactory() : threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		asyncExecutor = executor;
+		callbackExecutor = executor;
+		// 初始化慢语句日志及语句超时，需要在解析配置前完成
+		int slowMillis = parseInt("slowThreshold", slowThreshold, 0);
+		metricsInterceptor = new MetricsInterceptor(metrics, (slowMillis > 0) ? new SlowStatementLog(slowMillis, parseInt(
+				"slowLogRate", slowLogRate, DEFAULT_SLOW_LOG_RATE)) : null);
+		this.statementTimeouts = parseStatementTimeouts(statementTimeouts);
+		statementCacheInterceptor = new StatementCacheInterceptor(parseInt("statementCacheSize", statementCacheSize,
+				DEFAULT_STATEMENT_CACHE_SIZE));
+		this.reuseStatements = "true".equalsIgnoreCase(reuseStatements);
+		// 只读库的配置在异步线程中与主库并行解析
+		List<Future<ReadReplica>> pendingReplicas = new ArrayList<Future<ReadReplica>>();
+		if (replicaPaths != null) {
+			for (String replicaPath : replicaPaths.split(",")) {
+				replicaPath = replicaPath.trim();
+				if (replicaPath.length() == 0) {
+					continue;
+				}
+				InputStream is = openConfig(replicaPath);
+				if (is == null) {
+					FrameLogger.error("没有找到只读库的配置文件：" + replicaPath);
+				} else {
+					metrics.recordReplicaPending();
+					pendingReplicas.add(asyncExecutor.submit(new ReplicaBuilder(replicaPath, is)));
+				}
+			}
+		}
+		// 分片的配置同样并行解析，但路由依赖分片的编号，所以总是等待其完成
+		List<Future<SqlSessionFactory>> pendingShards = new ArrayList<Future<SqlSessionFactory>>();
+		if (shardPaths != null) {
+			for (String shardPath : shardPaths.split(",")) {
+				shardPath = shardPath.trim();
+				if (shardPath.length() == 0) {
+					continue;
+				}
+				final InputStream shardIs = openConfig(shardPath);
+				if (shardIs == null) {
+					FrameLogger.error("没有找到分片的配置文件：" + shardPath);
+					throw new RuntimeException("没有找到分片的配置文件：" + shardPath);
+				}
+				pendingShards.add(asyncExecutor.submit(new Callable<SqlSessionFactory>() {
+					@Override
+					public SqlSessionFactory call() {
+						return buildSqlSessionFactory(shardIs);
+					}
+				}));
+			}
+		}
+		InputStream is = openConfig(configPath);
+		SqlSessionFactory primary = (is == null) ? null : buildSqlSessionFactory(is);
+		// 开启热加载时，通过可替换的SqlSessionFactory打开Session
+		int reloadSeconds = parseInt("reloadInterval", reloadInterval, 0);
+		String realPath = (primary != null && reloadSeconds > 0) ? CurrentContext.getServletContext().getRealPath(
+				configPath) : null;
+		if (primary != null && reloadSeconds > 0 && realPath == null) {
+			FrameLogger.warn("配置文件不在文件系统中，无法热加载：" + configPath);
+		}
+		configFile = (realPath == null) ? null : new File(realPath);
+		reloadableFactory = (configFile == null) ? null : new ReloadableSqlSessionFactory(primary);
+		sqlSessionFactory = (reloadableFactory == null) ? primary : reloadableFactory;
+		for (Future<SqlSessionFactory> pendingShard : pendingShards) {
+			try {
+				shards.add(pendingShard.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("等待分片初始化时被中断！", e);
+			} catch (ExecutionException e) {
+				FrameLogger.error("分片初始化失败！", e.getCause());
+				throw new RuntimeException("分片初始化失败！", e.getCause());
+			}
+		}
+		ShardResolver resolver = newInstance(shardResolverClass, ShardResolver.class, "分片策略");
+		shardResolver = (resolver == null) ? new HashShardResolver() : resolver;
+		if (!"true".equalsIgnoreCase(lazyInit)) {
+			for (Future<ReadReplica> pendingReplica : pendingReplicas) {
+				try {
+					pendingReplica.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("等待只读库初始化时被中断！", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("只读库初始化失败！", e.getCause());
+				}
+			}
+		}
+		LoadBalancePolicy policy = newInstance(policyClass, LoadBalancePolicy.class, "负载均衡策略");
+		loadBalancePolicy = (policy == null) ? new RoundRobinPolicy() : policy;
+		// 初始化查询结果缓存
+		int maxEntries = parseInt("cacheSize", cacheSize, 0);
+		resultCache = (maxEntries > 0) ? new ResultCache(maxEntries, parseInt("cacheTtl", cacheTtl, 0) * 1000L) : null;
+		this.singleFlight = (singleFlight == null || singleFlight.trim().length() == 0) ? null : new SingleFlight(
+				singleFlight);
+		this.bulkheads = (bulkheads == null || bulkheads.trim().length() == 0) ? null : new Bulkheads(bulkheads,
+				parseInt("bulkheadMinLimit", bulkheadMinLimit, 1));
+		this.bulkheadWait = parseInt("bulkheadWait", bulkheadWait, 0);
+		metrics.setBulkheads(this.bulkheads);
+		leakDetector = new LeakDetector(parseInt("leakTraceRate", leakTraceRate, 0));
+		if (reloadableFactory != null) {
+			configWatcher = new ConfigWatcher(reloadSeconds * 1000L, new Runnable() {
+				@Override
+				public void run() {
+					reload();
+				}
+			});
+			configWatcher.watch(watchedFiles(sqlSessionFactory.getConfiguration()));
+		} else {
+			configWatcher = null;
+		}
+		writeBehindQueue = new WriteBehindQueue(parseInt("writeBehindQueueSize", writeBehindQueueSize,
+				DEFAULT_WRITE_BEHIND_QUEUE_SIZE), parseInt("writeBehindBatchSize", writeBehindBatchSize, DEFAULT_BATCH_SIZE),
+				parseInt("writeBehindInterval", writeBehindInterval, DEFAULT_WRITE_BEHIND_INTERVAL),
+				parseOverflowPolicy(writeBehindOverflow)) {
+			@Override
+			void writeBatch(int partition, String sqlmap, List<Object> parameters) {
+				// 整组作为一块提交，失败时整组回滚，由队列逐条重试
+				writeAll(partition, sqlmap, parameters, Integer.MAX_VALUE, true);
+			}
+
+			@Override
+			void writeOne(int partition, String sqlmap, Object parameter) {
+				SqlSession tempSession = getSession(partition);
+				try {
+					tempSession.insert(sqlmap, parameter);
+				} finally {
+					tempSession.close();
+				}
+				invalidateCache(sqlmap);
+			}
+		};
+		metricsName = registerMetrics(configPath);
+		if (sqlSessionFactory != null && container != null) {
+			// 注册Mapper。容器只能注册现成的对象，所以在此创建代理；代理的创建很轻，函数在第一次调用时才解析
 			Collection<Class<?>> mappers = sqlSessionFactory.getConfiguration().getMapperRegistry().getMappers();
 			for (Class<?> mapper : mappers) {
 				container.registerSingleton(Mapper.class.getSimpleName(), mapper.getName(), getMapper(mapper));
@@ -54,274 +362,1814 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		}
 	}
 
+	/**
+	 * 用于打开配置文件，配置文件需要在初始化线程中打开，之后可以在其他线程中解析。
+	 * 
+	 * @return 配置文件的输入流，没有找到配置文件时返回null
+	 */
+	private static InputStream openConfig(String configPath) {
+		return CurrentContext.getServletContext().getResourceAsStream(configPath);
+	}
+
+	private SqlSessionFactory buildSqlSessionFactory(InputStream is) {
+		SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(is);
+		factory.getConfiguration().addInterceptor(statementInterceptor);
+		// 需要在执行器被MetricsInterceptor包装之前处理
+		factory.getConfiguration().addInterceptor(statementCacheInterceptor);
+		factory.getConfiguration().addInterceptor(metricsInterceptor);
+		applyStatementTimeouts(factory.getConfiguration());
+		return factory;
+	}
+
+	private static WriteBehindQueue.OverflowPolicy parseOverflowPolicy(String value) {
+		if (value == null || "".equals(value) || "block".equalsIgnoreCase(value)) {
+			return WriteBehindQueue.OverflowPolicy.BLOCK;
+		} else if ("discard".equalsIgnoreCase(value)) {
+			return WriteBehindQueue.OverflowPolicy.DISCARD;
+		} else if ("callerRuns".equalsIgnoreCase(value)) {
+			return WriteBehindQueue.OverflowPolicy.CALLER_RUNS;
+		} else if ("reject".equalsIgnoreCase(value)) {
+			return WriteBehindQueue.OverflowPolicy.REJECT;
+		}
+		FrameLogger.error("不支持的延迟写入队列溢出处理方式：" + value);
+		throw new RuntimeException("不支持的延迟写入队列溢出处理方式：" + value);
+	}
+
+	private static Map<String, Integer> parseStatementTimeouts(String value) {
+		Map<String, Integer> timeouts = new LinkedHashMap<String, Integer>();
+		if (value == null) {
+			return timeouts;
+		}
+		for (String item : value.split(",")) {
+			item = item.trim();
+			if (item.length() == 0) {
+				continue;
+			}
+			int index = item.lastIndexOf('=');
+			if (index <= 0) {
+				FrameLogger.error("语句超时的格式不正确：" + item);
+				throw new RuntimeException("语句超时的格式不正确：" + item);
+			}
+			timeouts.put(item.substring(0, index).trim(), parseInt("statementTimeouts", item.substring(index + 1), 0));
+		}
+		return timeouts;
+	}
+
+	/**
+	 * 将配置的语句超时写入MappedStatement，之后由MyBatis在创建JDBC语句时设置，执行时没有额外开销。
+	 */
+	private void applyStatementTimeouts(Configuration configuration) {
+		if (statementTimeouts.isEmpty()) {
+			return;
+		}
+		for (Object item : configuration.getMappedStatements()) {
+			// StrictMap中还保存有简称到Ambiguity对象的映射，需要跳过
+			if (!(item instanceof MappedStatement)) {
+				continue;
+			}
+			MappedStatement ms = (MappedStatement) item;
+			Integer timeout = null;
+			int matched = -1;
+			for (Map.Entry<String, Integer> entry : statementTimeouts.entrySet()) {
+				String pattern = entry.getKey();
+				if (pattern.equals(ms.getId())) {
+					timeout = entry.getValue();
+					break;
+				}
+				if (pattern.endsWith("*") && pattern.length() > matched
+						&& ms.getId().startsWith(pattern.substring(0, pattern.length() - 1))) {
+					timeout = entry.getValue();
+					matched = pattern.length();
+				}
+			}
+			if (timeout != null) {
+				SystemMetaObject.forObject(ms).setValue("timeout", (timeout > 0) ? timeout : null);
+			}
+		}
+	}
+
+	/**
+	 * 在异步线程中初始化只读库，完成后将其加入只读库列表。
+	 */
+	private class ReplicaBuilder implements Callable<ReadReplica> {
+		private final String configPath;
+		private final InputStream is;
+
+		private ReplicaBuilder(String configPath, InputStream is) {
+			this.configPath = configPath;
+			this.is = is;
+		}
+
+		@Override
+		public ReadReplica call() {
+			try {
+				ReadReplica replica = new ReadReplica(configPath, buildSqlSessionFactory(is));
+				replicas.add(replica);
+				metrics.recordReplicaDone(true);
+				return replica;
+			} catch (RuntimeException e) {
+				// 延迟初始化时没有人等待结果，通过运行统计中的失败数量发现
+				metrics.recordReplicaDone(false);
+				FrameLogger.error("只读库初始化失败：" + configPath, e);
+				throw e;
+			} catch (Error e) {
+				metrics.recordReplicaDone(false);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * 将运行统计注册到JMX，注册失败不影响正常使用。<br/>
+	 * 已存在相同名称的运行统计时（如重新部署后原来的管理器没有关闭），以本次的替换原来的，避免JMX继续显示原来的统计。
+	 * 
+	 * @return 注册的名称，注册失败时返回null
+	 */
+	private ObjectName registerMetrics(String configPath) {
+		try {
+			ObjectName name = new ObjectName("com.carltian.frame.mybatis:type=MyBatisMetrics,config="
+					+ ObjectName.quote(configPath));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.registerMBean(metrics, name);
+			} catch (InstanceAlreadyExistsException e) {
+				FrameLogger.warn("已存在相同配置的MyBatis运行统计，将替换原来的：" + name);
+				try {
+					server.unregisterMBean(name);
+				} catch (InstanceNotFoundException ex) {
+					// 已被其他线程注销
+				}
+				server.registerMBean(metrics, name);
+			}
+			return name;
+		} catch (Exception e) {
+			FrameLogger.error("无法将MyBatis运行统计注册到JMX！", e);
+			return null;
+		}
+	}
+
+	/**
+	 * 从JMX注销运行统计，使原来的管理器及其类加载器可以被回收。
+	 */
+	private void unregisterMetrics() {
+		if (metricsName == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			// 重新部署后可能已被新的应用（不同的类加载器）替换，此时不能注销
+			if (server.getClassLoaderFor(metricsName) == MyBatisMetrics.class.getClassLoader()) {
+				server.unregisterMBean(metricsName);
+			}
+		} catch (InstanceNotFoundException e) {
+			// 已被注销或替换
+		} catch (Exception e) {
+			FrameLogger.error("无法从JMX注销MyBatis运行统计！", e);
+		}
+	}
+
+	/**
+	 * 用于设置执行异步事务回调的线程池，默认与异步操作共用同一个线程池。<br/>
+	 * 线程池拒绝任务时，回调将在提交或回滚事务的线程中直接执行。
+	 * 
+	 * @param callbackExecutor
+	 *           执行异步事务回调的线程池
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		if (callbackExecutor == null) {
+			throw new IllegalArgumentException("callbackExecutor不能为空！");
+		}
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * 用于重新加载主库的配置文件，需要配置reloadInterval开启热加载。<br/>
+	 * 新的配置解析并验证（检查全部sqlmap并获取一次连接）通过后，才替换原来的配置：之后打开的Session使用新的配置，
+	 * 已经打开的事务及共享Session继续使用原来的配置直到关闭，全部关闭后原来的连接池即被关闭。
+	 * 替换后查询结果缓存将被清空。只读库及分片的配置不会重新加载，新增的Mapper接口不会注册到容器中。
+	 * 
+	 * @return 加载成功时返回true，失败时保留原来的配置并返回false
+	 */
+	public synchronized boolean reload() {
+		if (reloadableFactory == null) {
+			FrameLogger.warn("没有开启热加载，请配置reloadInterval！");
+			return false;
+		}
+		SqlSessionFactory factory;
+		try {
+			factory = buildSqlSessionFactory(new FileInputStream(configFile));
+		} catch (Exception e) {
+			FrameLogger.error("重新加载配置失败，继续使用原来的配置：" + configFile, e);
+			return false;
+		}
+		try {
+			// 解析全部未完成的sqlmap，并检查数据源是否可用
+			factory.getConfiguration().getMappedStatementNames();
+			SqlSession session = factory.openSession();
+			try {
+				session.getConnection();
+			} finally {
+				session.close();
+			}
+		} catch (Exception e) {
+			FrameLogger.error("新的配置验证失败，继续使用原来的配置：" + configFile, e);
+			ReloadableSqlSessionFactory.closeDataSource(factory);
+			return false;
+		}
+		reloadableFactory.swap(factory);
+		// 已解析的Mapper函数引用原来的配置，需要重新解析；Mapper代理持有各自的Map，所以清空而不是移除
+		mapperCaches.clear();
+		for (ConcurrentMap<Method, MapperInvoker> invokers : mapperInvokers.values()) {
+			invokers.clear();
+		}
+		if (resultCache != null) {
+			resultCache.clear();
+		}
+		if (configWatcher != null) {
+			configWatcher.watch(watchedFiles(factory.getConfiguration()));
+		}
+		FrameLogger.warn("已重新加载配置：" + configFile);
+		return true;
+	}
+
+	/**
+	 * 获取需要检查修改的文件，即主库的配置文件及其加载的mapper文件。
+	 */
+	private List<File> watchedFiles(Configuration configuration) {
+		List<File> files = new ArrayList<File>();
+		files.add(configFile);
+		@SuppressWarnings("unchecked")
+		Set<String> resources = (Set<String>) SystemMetaObject.forObject(configuration).getValue("loadedResources");
+		for (String resource : resources) {
+			// 其中还记录有已加载的命名空间和接口，需要跳过
+			if (resource.startsWith("namespace:") || resource.startsWith("interface ")) {
+				continue;
+			}
+			try {
+				URL url = resource.contains(":") ? new URL(resource) : Resources.getResourceURL(resource);
+				if ("file".equals(url.getProtocol())) {
+					files.add(new File(url.toURI()));
+				}
+			} catch (Exception e) {
+				// 无法定位的资源不检查
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * 用于关闭管理器：停止接收延迟写入，并等待队列中剩余的记录写入完毕；之后停止配置文件的检查及异步线程池，
+	 * 并关闭主库、只读库及分片的连接池，正在使用的连接在归还时关闭；最后停止连接泄漏检测，并从JMX注销运行统计。<br/>
+	 * 虚拟机正常退出时会自动写入剩余的延迟写入记录；在Web容器中卸载应用时虚拟机并不退出，需要显式调用。
+	 * 
+	 * @param timeoutMillis
+	 *           最多等待的时间（毫秒）
+	 * @return 剩余的记录全部写入时返回true
+	 */
+	public boolean shutdown(long timeoutMillis) {
+		boolean flushed;
+		try {
+			flushed = writeBehindQueue.close(timeoutMillis);
+			if (!flushed) {
+				FrameLogger.warn("关闭时仍有" + writeBehindQueue.getPending() + "条延迟写入的记录没有写入！");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			flushed = false;
+		}
+		if (configWatcher != null) {
+			configWatcher.stop();
+		}
+		asyncExecutor.shutdown();
+		// 热加载时由可替换的SqlSessionFactory在其Session全部关闭后关闭连接池
+		if (reloadableFactory != null) {
+			reloadableFactory.close();
+		} else if (sqlSessionFactory != null) {
+			ReloadableSqlSessionFactory.closeDataSource(sqlSessionFactory);
+		}
+		for (ReadReplica replica : replicas) {
+			ReloadableSqlSessionFactory.closeDataSource(replica.getSqlSessionFactory());
+		}
+		for (SqlSessionFactory shard : shards) {
+			ReloadableSqlSessionFactory.closeDataSource(shard);
+		}
+		leakDetector.stop();
+		unregisterMetrics();
+		return flushed;
+	}
+
+	/**
+	 * 用于获取运行统计，包括各sqlmap的调用次数及耗时、Session的占用时间、事务的提交和回滚次数等。
+	 * 
+	 * @return 运行统计
+	 */
+	public MyBatisMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 通过无参的构造函数创建初始化参数所指定的类的实例。
+	 * 
+	 * @param className
+	 *           类名
+	 * @param type
+	 *           需要实现的接口
+	 * @param what
+	 *           用于错误信息的名称
+	 * @return 类名为空时返回null
+	 */
+	private static <T> T newInstance(String className, Class<T> type, String what) {
+		if (className == null || "".equals(className.trim())) {
+			return null;
+		}
+		try {
+			return Class.forName(className.trim()).asSubclass(type).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			FrameLogger.error("无法初始化" + what + "：" + className, e);
+			throw new RuntimeException("无法初始化" + what + "：" + className, e);
+		}
+	}
+
+	private static int parseInt(String name, String value, int defaultValue) {
+		if (value == null || "".equals(value.trim())) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			FrameLogger.error("参数 " + name + " 不是有效的整数：" + value, e);
+			throw new RuntimeException("参数 " + name + " 不是有效的整数：" + value, e);
+		}
+	}
+
+	/**
+	 * 用于获取sqlmap所属的命名空间，作为查询结果缓存失效的单位。
+	 * 
+	 * @param sqlmap
+	 *           sqlmap名称
+	 * @return 命名空间，即完整的sqlmap名称中最后一个“.”之前的部分
+	 */
+	private String namespaceOf(String sqlmap) {
+		String id = sqlSessionFactory.getConfiguration().getMappedStatement(sqlmap).getId();
+		int index = id.lastIndexOf('.');
+		return (index < 0) ? "" : id.substring(0, index);
+	}
+
+	/**
+	 * 用于在非事务的写操作之后，使sqlmap所属命名空间的查询结果缓存失效。
+	 */
+	private void invalidateCache(String sqlmap) {
+		if (resultCache != null) {
+			resultCache.invalidate(namespaceOf(sqlmap));
+		}
+	}
+
+	/**
+	 * 用于选择一个只读库，没有配置只读库时返回null，此时应使用主库。
+	 * 
+	 * @return 被负载均衡策略选中的只读库
+	 */
+	private ReadReplica selectReplica() {
+		if (replicas.isEmpty()) {
+			return null;
+		}
+		return replicas.get(loadBalancePolicy.select(replicas));
+	}
+
+	/**
+	 * 用于获取一个执行非事务查询的数据库Session，配置了只读库时从只读库获取，否则从主库获取。<br/>
+	 * 使用后必须通过{@link #closeReadSession(ReadReplica, SqlSession)}关闭。
+	 * 
+	 * @param replica
+	 *           {@link #selectReplica()}所选中的只读库
+	 * @return 会自动提交的数据库Session
+	 */
+	private SqlSession getReadSession(ReadReplica replica) {
+		return (replica == null) ? getSession() : replica.openSession();
+	}
+
+	/**
+	 * 用于确定非事务操作所在的分片。
+	 * 
+	 * @return 分片的下标，没有配置分片或该操作不分片时返回-1
+	 */
+	private int resolveShard(String sqlmap, Object parameter) {
+		if (shards.isEmpty()) {
+			return -1;
+		}
+		return checkShard(shardResolver.getShard(sqlmap, parameter, shards.size()));
+	}
+
+	private int checkShard(int shard) {
+		if (shard >= shards.size()) {
+			FrameLogger.error("分片策略返回了不存在的分片：" + shard);
+			throw new IllegalStateException("分片策略返回了不存在的分片：" + shard);
+		}
+		return (shard < 0) ? -1 : shard;
+	}
+
+	/**
+	 * 用于获取分片（或主库）中会自动提交更改的数据库Session，分片没有只读库及共享Session。
+	 * 
+	 * @param shard
+	 *           分片的下标，负数表示主库
+	 * @return 会自动提交的数据库Session
+	 */
+	private SqlSession getSession(int shard) {
+		return (shard < 0) ? getSession() : shards.get(shard).openSession(true);
+	}
+
+	private void closeReadSession(ReadReplica replica, SqlSession session) {
+		if (replica == null) {
+			session.close();
+		} else {
+			replica.close(session);
+		}
+	}
+
 	/**
 	 * 用于从连接池中获取一个会自动提交更改的数据库Session。
 	 * 
 	 * @return 会自动提交的数据库Session
 	 */
 	private SqlSession getSession() {
+		return getSession(ExecutorType.SIMPLE);
+	}
+
+	private SqlSession getSession(ExecutorType executorType) {
 		if (sqlSessionFactory == null) {
 			FrameLogger.error("DatabaseManager未正确配置！");
 			throw new RuntimeException("DatabaseManager未正确配置！");
 		}
-		return sqlSessionFactory.openSession(true);
+		return sqlSessionFactory.openSession(executorType, true);
 	}
 
 	/**
 	 * 用于从连接池中获取一个非自动提交的数据库Session，相当于开启一个事务。
 	 * 
+	 * @param executorType
+	 *           执行器类型，批量事务使用{@link ExecutorType#BATCH}
 	 * @return 非自动提交的数据库Session
 	 */
-	private SqlSession getTranSession() {
+	private SqlSession getTranSession(ExecutorType executorType) {
 		if (sqlSessionFactory == null) {
 			FrameLogger.error("DatabaseManager未正确配置！");
 			throw new RuntimeException("DatabaseManager未正确配置！");
 		}
-		return sqlSessionFactory.openSession(false);
+		return sqlSessionFactory.openSession(executorType, false);
+	}
+
+	private SqlSession getTranSession(int shard, ExecutorType executorType) {
+		return (shard < 0) ? getTranSession(executorType) : shards.get(shard).openSession(executorType, false);
 	}
 
 	/**
 	 * 用于打开一个共享Session，该Session将被之后该线程的所有非事务操作所共享。<br/>
-	 * 该操作一般用于降低Session重复创建的次数，但在使用后需要适时的调用{@link #closeSharedSession()}关闭Session。
+	 * 该操作一般用于降低Session重复创建的次数，但在使用后需要适时的调用{@link #closeSharedSession()}关闭Session。<br/>
+	 * 配置了reuseStatements时，该Session中重复执行的语句只预编译一次，缓存的语句数量受statementCacheSize限制。
 	 */
 	@Override
 	public void openSharedSession() {
-		sharedSession.set(getSession());
+		// 重复打开时关闭之前的Session，避免泄漏
+		closeSharedSession();
+		sharedScope.set(new SessionScope(openSharedSqlSession()));
 	}
 
 	/**
-	 * 用于关闭一个被{@link #openSharedSession()} 所打开的Session，之后该线程的所有非事务操作将自行新建Session独立运行。
+	 * 用于关闭一个被{@link #openSharedSession()} 所打开的Session，之后该线程的所有非事务操作将自行新建Session独立运行。<br/>
+	 * 如果Session已被传播到仍在执行的子任务，将在最后一个子任务结束时关闭。
 	 */
 	@Override
 	public void closeSharedSession() {
-		SqlSession session = sharedSession.get();
-		if (session != null) {
-			session.close();
+		SessionScope scope = sharedScope.get();
+		if (scope != null) {
+			sharedScope.remove();
+			scope.release();
 		}
-		sharedSession.remove();
 	}
 
 	/**
-	 * 用于获取一个会自动提交更改的Mapper，该Mapper线程安全且可以长期持有。
+	 * 用于在共享Session的作用域中执行一组数据库操作，任务中的全部非事务操作（包括Mapper）都将共享同一个Session。<br/>
+	 * 与{@link #openSharedSession()}不同，作用域只在任务执行期间绑定到当前线程，任务结束（包括抛出异常）时即解除绑定并释放Session，
+	 * 不会因为遗漏关闭而泄漏。需要在其他线程中使用同一个Session时，通过{@link #propagateSharedSession(Callable)}包装子任务。<br/>
+	 * 当前线程已经处于共享Session中时，直接使用该Session执行任务。
 	 * 
-	 * @return 会自动提交更改的Mapper
+	 * @param task
+	 *           需要执行的任务
+	 * @return 任务的执行结果
+	 * @throws Exception
+	 *            任务抛出的异常
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
-	public <T> T getMapper(Class<T> clazz) {
-		return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, new MapperProxy(clazz));
+	public <T> T runWithSharedSession(Callable<T> task) throws Exception {
+		if (sharedScope.get() != null) {
+			return task.call();
+		}
+		SessionScope scope = new SessionScope(openSharedSqlSession());
+		try {
+			return runInScope(scope, task);
+		} finally {
+			scope.release();
+		}
 	}
 
 	/**
-	 * 初始化一个事务对象。<br/>
-	 * 注意：该事务会在提交或回滚后自动释放连接。
+	 * 用于在显式传递的共享Session中执行一组数据库操作。与{@link #runWithSharedSession(Callable)}不同，
+	 * 作用域不绑定到任何线程，而是作为参数交给回调函数：通过{@link SharedSession}执行的操作及获取的Mapper总是使用该Session，
+	 * 可以直接交给子任务或虚拟线程执行，不需要{@link #propagateSharedSession(Callable)}包装，也不依赖线程的局部变量。<br/>
+	 * 回调函数返回（包括抛出异常）时Session即被关闭，使用该Session的子任务需要在此之前结束。
+	 * 
+	 * @param callback
+	 *           回调函数
+	 * @return 回调函数的返回值
+	 * @throws Exception
+	 *            回调函数抛出的异常
 	 */
 	@Override
-	public Transaction getTransaction() {
-		return new DefaultTransaction(true);
+	public <T> T runWithSharedSession(SessionCallback<T> callback) throws Exception {
+		SessionScope scope = new SessionScope(openSharedSqlSession());
+		try {
+			return callback.call(new ExplicitSharedSession(scope));
+		} finally {
+			scope.release();
+		}
+	}
+
+	/**
+	 * 显式传递的共享Session，各操作在执行时直接取得作用域的Session，不经过线程的局部变量。
+	 * 
+	 * @author Carl Tian
+	 */
+	private class ExplicitSharedSession implements SharedSession {
+
+		private final SessionScope scope;
+
+		private ExplicitSharedSession(SessionScope scope) {
+			this.scope = scope;
+		}
+
+		private SqlSession session() {
+			if (!scope.isOpen()) {
+				throw new IllegalStateException("共享Session已经关闭！");
+			}
+			return scope.getSession();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T getMapper(Class<T> clazz) {
+			return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, new MapperProxy(clazz,
+					scope));
+		}
+
+		@Override
+		public <T> T selectOne(String sqlmap) {
+			return selectOne(sqlmap, null);
+		}
+
+		@Override
+		public <T> T selectOne(String sqlmap, Object parameter) {
+			return MyBatisManagerImpl.this.selectOne(session(), sqlmap, parameter);
+		}
+
+		@Override
+		public <E> List<E> selectList(String sqlmap) {
+			return selectList(sqlmap, null);
+		}
+
+		@Override
+		public <E> List<E> selectList(String sqlmap, Object parameter) {
+			return MyBatisManagerImpl.this.selectList(session(), sqlmap, parameter);
+		}
+
+		@Override
+		public void select(String sqlmap, Object parameter, ResultHandler handler) {
+			select(sqlmap, parameter, 0, handler);
+		}
+
+		@Override
+		public void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler) {
+			MyBatisManagerImpl.this.select(session(), sqlmap, parameter, fetchSize, handler);
+		}
+
+		@Override
+		public int insert(String sqlmap) {
+			return insert(sqlmap, null);
+		}
+
+		@Override
+		public int insert(String sqlmap, Object parameter) {
+			return MyBatisManagerImpl.this.insert(session(), sqlmap, parameter);
+		}
+
+		@Override
+		public int update(String sqlmap) {
+			return update(sqlmap, null);
+		}
+
+		@Override
+		public int update(String sqlmap, Object parameter) {
+			return MyBatisManagerImpl.this.update(session(), sqlmap, parameter);
+		}
+
+		@Override
+		public int delete(String sqlmap) {
+			return delete(sqlmap, null);
+		}
+
+		@Override
+		public int delete(String sqlmap, Object parameter) {
+			return MyBatisManagerImpl.this.delete(session(), sqlmap, parameter);
+		}
+	}
+
+	/**
+	 * 用于将当前的共享Session传播到子任务，子任务无论在哪个线程中执行，都将共享该Session。<br/>
+	 * 子任务开始执行时如果作用域已经结束，子任务将抛出{@link IllegalStateException}而不会自行打开Session；
+	 * 子任务执行期间作用域不会关闭Session，最后一个持有者结束时才关闭。同一个Session上的操作会被串行执行。
+	 * 
+	 * @param task
+	 *           子任务
+	 * @return 包装后的子任务，当前线程不在共享Session中时直接返回task
+	 */
+	@Override
+	public <T> Callable<T> propagateSharedSession(final Callable<T> task) {
+		final SessionScope scope = sharedScope.get();
+		if (scope == null) {
+			return task;
+		}
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				// 在执行时才增加持有者，子任务未被执行（如被取消）时不会使Session无法关闭
+				if (!scope.retain()) {
+					throw new IllegalStateException("共享Session已经关闭，子任务需要在作用域结束前开始执行！");
+				}
+				try {
+					return runInScope(scope, task);
+				} finally {
+					scope.release();
+				}
+			}
+		};
+	}
+
+	/**
+	 * 将作用域绑定到当前线程并执行任务，结束后恢复之前的绑定。
+	 */
+	private <T> T runInScope(SessionScope scope, Callable<T> task) throws Exception {
+		SessionScope previous = sharedScope.get();
+		sharedScope.set(scope);
+		try {
+			return task.call();
+		} finally {
+			if (previous == null) {
+				sharedScope.remove();
+			} else {
+				sharedScope.set(previous);
+			}
+		}
+	}
+
+	private SqlSession currentSharedSession() {
+		SessionScope scope = sharedScope.get();
+		return (scope == null) ? null : scope.getSession();
+	}
+
+	private SqlSession openSharedSqlSession() {
+		return reuseStatements ? getSession(ExecutorType.REUSE) : getSession();
+	}
+
+	/**
+	 * 用于获取一个会自动提交更改的Mapper，该Mapper线程安全且可以长期持有。
+	 * 
+	 * @return 会自动提交更改的Mapper
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getMapper(Class<T> clazz) {
+		return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, new MapperProxy(clazz));
+	}
+
+	/**
+	 * 用于获取Mapper的异步版本。异步接口中的每个函数需要与Mapper中的某个函数同名、参数类型相同，返回值为{@link Future}，
+	 * 调用时在异步线程中执行对应的Mapper函数，Session在任务中打开并关闭，不使用调用者的共享Session。
+	 * 
+	 * @param asyncInterface
+	 *           异步接口
+	 * @param mapperClass
+	 *           对应的Mapper接口
+	 * @return 异步接口的实现
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <A> A getAsyncMapper(Class<A> asyncInterface, Class<?> mapperClass) {
+		return (A) Proxy.newProxyInstance(asyncInterface.getClassLoader(), new Class<?>[] { asyncInterface },
+				new AsyncMapperProxy(asyncInterface, mapperClass));
+	}
+
+	/**
+	 * 初始化一个事务对象。<br/>
+	 * 注意：该事务会在提交或回滚后自动释放连接。
+	 */
+	@Override
+	public Transaction getTransaction() {
+		return new DefaultTransaction(true, ExecutorType.SIMPLE);
+	}
+
+	/**
+	 * 根据参数，初始化一个事务对象。（除非您了解该功能，否则不推荐使用非自动关闭的事务）
+	 * 
+	 * @param autoClose
+	 *           是否需要在提交或回滚后自动释放数据库连接。
+	 */
+	@Override
+	public Transaction getTransaction(boolean autoClose) {
+		return new DefaultTransaction(autoClose, ExecutorType.SIMPLE);
+	}
+
+	/**
+	 * 根据执行器类型，初始化一个事务对象。<br/>
+	 * 使用{@link ExecutorType#BATCH}时，事务中的写操作将被暂存并以JDBC批处理的方式发送到数据库，适用于大量数据的导入。<br/>
+	 * 批量模式下写操作的返回值没有意义，被影响的行数请在提交后通过{@link Transaction#getBatchResults()}获取。<br/>
+	 * 注意：该事务会在提交或回滚后自动释放连接。
+	 * 
+	 * @param executorType
+	 *           执行器类型
+	 */
+	@Override
+	public Transaction getTransaction(ExecutorType executorType) {
+		return new DefaultTransaction(true, executorType);
+	}
+
+	/**
+	 * 根据参数，初始化一个事务对象。（除非您了解该功能，否则不推荐使用非自动关闭的事务）
+	 * 
+	 * @param autoClose
+	 *           是否需要在提交或回滚后自动释放数据库连接。
+	 * @param executorType
+	 *           执行器类型
+	 */
+	@Override
+	public Transaction getTransaction(boolean autoClose, ExecutorType executorType) {
+		return new DefaultTransaction(autoClose, executorType);
+	}
+
+	/**
+	 * 根据传播方式，初始化一个事务对象。<br/>
+	 * 当前线程中已有未结束的事务时（无论其是否已经打开连接），{@link Propagation#REQUIRED}及{@link Propagation#NESTED}
+	 * 将加入该事务，共用同一个连接，连接尚未打开时由第一个操作打开；加入的事务上的回调函数注册到最外层的事务，
+	 * 只在最外层事务提交或回滚时触发。只有{@link Propagation#REQUIRES_NEW}总是开启新的事务。<br/>
+	 * 通过该函数新开启的事务从创建起即成为当前线程的事务，直到被关闭（自动关闭的事务在提交或回滚后关闭），所以不再使用的事务都需要关闭；
+	 * 通过其他getTransaction函数创建的事务不会成为当前线程的事务，不能被加入。<br/>
+	 * 注意：新开启的事务会在提交或回滚后自动释放连接。
+	 * 
+	 * @param propagation
+	 *           传播方式
+	 */
+	@Override
+	public Transaction getTransaction(Propagation propagation) {
+		return getTransaction(propagation, ExecutorType.SIMPLE);
+	}
+
+	/**
+	 * 根据传播方式，初始化一个事务对象，参见{@link #getTransaction(Propagation)}。
+	 * 
+	 * @param propagation
+	 *           传播方式
+	 * @param executorType
+	 *           新开启的事务的执行器类型，加入当前事务时使用当前事务的执行器
+	 */
+	@Override
+	public Transaction getTransaction(Propagation propagation, ExecutorType executorType) {
+		WeakReference<DefaultTransaction> current = currentTransaction.get();
+		DefaultTransaction outer = (current == null) ? null : current.get();
+		if (outer == null || !outer.bound || propagation == Propagation.REQUIRES_NEW) {
+			return new DefaultTransaction(true, executorType, true);
+		}
+		return new JoinedTransaction(outer, propagation == Propagation.NESTED);
+	}
+
+	/**
+	 * 初始化一个绑定到分片键所在分片的事务对象，事务中的全部操作都在该分片上执行。<br/>
+	 * 注意：该事务会在提交或回滚后自动释放连接。
+	 * 
+	 * @param shardKey
+	 *           分片键，由{@link ShardResolver#getShardByKey(Object, int)}确定分片
+	 */
+	@Override
+	public Transaction getShardTransaction(Object shardKey) {
+		return getShardTransaction(shardKey, ExecutorType.SIMPLE);
+	}
+
+	/**
+	 * 初始化一个绑定到分片键所在分片的事务对象，事务中的全部操作都在该分片上执行。<br/>
+	 * 注意：该事务会在提交或回滚后自动释放连接。
+	 * 
+	 * @param shardKey
+	 *           分片键，由{@link ShardResolver#getShardByKey(Object, int)}确定分片
+	 * @param executorType
+	 *           执行器类型
+	 */
+	@Override
+	public Transaction getShardTransaction(Object shardKey, ExecutorType executorType) {
+		DefaultTransaction transaction = new DefaultTransaction(true, executorType);
+		transaction.shard = shards.isEmpty() ? -1 : checkShard(shardResolver.getShardByKey(shardKey, shards.size()));
+		transaction.pinned = true;
+		return transaction;
+	}
+
+	/**
+	 * 用于从数据库查询一条数据。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @return 返回一个sqlmap中定义的类型的结果 当没有数据返回时，函数返回null。<br/>
+	 *         值得注意的是，当数据多于一条时，会抛出异常： {@link org.apache.ibatis.exceptions.TooManyResultsException}
+	 */
+	@Override
+	public <T> T selectOne(String sqlmap) {
+		return selectOne(sqlmap, null);
+	}
+
+	/**
+	 * 用于从数据库查询一条数据。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 返回一个sqlmap中定义的类型的结果 当没有数据返回时，函数返回null。<br/>
+	 *         值得注意的是，当数据多于一条时，会抛出异常： {@link org.apache.ibatis.exceptions.TooManyResultsException}
+	 */
+	@Override
+	public <T> T selectOne(String sqlmap, Object parameter) {
+		return selectOne(currentSharedSession(), sqlmap, parameter);
+	}
+
+	/**
+	 * 查询一条数据，参见{@link #selectOne(String, Object)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T selectOne(SqlSession sharedSession, final String sqlmap, final Object parameter) {
+		String namespace = null;
+		long generation = 0;
+		if (resultCache != null) {
+			namespace = namespaceOf(sqlmap);
+			Object cached = resultCache.get(namespace, sqlmap, parameter);
+			if (cached != ResultCache.MISS) {
+				return (T) cached;
+			}
+			generation = resultCache.generation(namespace);
+		}
+		final int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		T result;
+		if (tempSession != null) {
+			result = selectOneShared(tempSession, sqlmap, parameter);
+		} else if (singleFlight != null && singleFlight.isEnabled(sqlmap)) {
+			// 合并相同的并发查询，各调用者得到的是同一个结果对象
+			result = singleFlight.execute(sqlmap, parameter, new Callable<T>() {
+				@Override
+				public T call() {
+					return readOne(shard, sqlmap, parameter);
+				}
+			});
+		} else {
+			result = readOne(shard, sqlmap, parameter);
+		}
+		if (resultCache != null) {
+			resultCache.put(sqlmap, parameter, generation, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 用于从数据库查询一些数据。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @return 返回一个sqlmap中定义的类型的结果的List类型对象。 当没有数据返回时，函数返回一个空的List。
+	 */
+	@Override
+	public <E> List<E> selectList(String sqlmap) {
+		return selectList(sqlmap, null);
+	}
+
+	/**
+	 * 用于从数据库查询一些数据。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 返回一个sqlmap中定义的类型的结果的List类型对象。 当没有数据返回时，函数返回一个空的List。
+	 */
+	@Override
+	public <E> List<E> selectList(String sqlmap, Object parameter) {
+		return selectList(currentSharedSession(), sqlmap, parameter);
+	}
+
+	/**
+	 * 查询一些数据，参见{@link #selectList(String, Object)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> List<E> selectList(SqlSession sharedSession, final String sqlmap, final Object parameter) {
+		String namespace = null;
+		long generation = 0;
+		if (resultCache != null) {
+			namespace = namespaceOf(sqlmap);
+			Object cached = resultCache.get(namespace, sqlmap, parameter);
+			if (cached != ResultCache.MISS) {
+				// 返回副本，防止调用者修改缓存的结果
+				return new ArrayList<E>((List<E>) cached);
+			}
+			generation = resultCache.generation(namespace);
+		}
+		final int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		List<E> result;
+		if (tempSession != null) {
+			result = selectListShared(tempSession, sqlmap, parameter);
+		} else if (singleFlight != null && singleFlight.isEnabled(sqlmap)) {
+			// 合并相同的并发查询，List是共享的，所以每个调用者都得到一个副本，其中的元素仍然是共享的
+			List<E> shared = singleFlight.execute(sqlmap, parameter, new Callable<List<E>>() {
+				@Override
+				public List<E> call() {
+					return readList(shard, sqlmap, parameter);
+				}
+			});
+			result = new ArrayList<E>(shared);
+		} else {
+			result = readList(shard, sqlmap, parameter);
+		}
+		if (resultCache != null) {
+			resultCache.put(sqlmap, parameter, generation, new ArrayList<E>(result));
+		}
+		return result;
+	}
+
+	/**
+	 * 获取sqlmap所属的隔离舱。
+	 * 
+	 * @return 没有所属的隔离舱时返回null
+	 */
+	private ConcurrencyLimiter bulkheadOf(String sqlmap) {
+		return (bulkheads == null) ? null : bulkheads.limiterOf(sqlmap);
+	}
+
+	/**
+	 * 占用隔离舱的一个名额，需要在打开Session之前调用，超出上限的调用者不会占用连接（使用共享Session时除外）。
+	 * 
+	 * @return 名额的开始时间，没有所属的隔离舱时返回0
+	 */
+	private long enterBulkhead(ConcurrencyLimiter limiter) {
+		return (limiter == null) ? 0 : limiter.acquire(bulkheadWait);
+	}
+
+	/**
+	 * 释放{@link #enterBulkhead(ConcurrencyLimiter)}占用的名额。
+	 * 
+	 * @param succeeded
+	 *           是否执行成功，只有成功的执行时间用于调整隔离舱的上限
+	 */
+	private void exitBulkhead(ConcurrencyLimiter limiter, long start, boolean succeeded) {
+		if (limiter != null) {
+			limiter.release(start, succeeded);
+		}
+	}
+
+	/**
+	 * 在共享Session中查询一条数据，共享Session中的操作同样受隔离舱限制。
+	 */
+	private <T> T selectOneShared(SqlSession sharedSession, String sqlmap, Object parameter) {
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			T result = sharedSession.selectOne(sqlmap, parameter);
+			succeeded = true;
+			return result;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+	}
+
+	/**
+	 * 在共享Session中查询一些数据，共享Session中的操作同样受隔离舱限制。
+	 */
+	private <E> List<E> selectListShared(SqlSession sharedSession, String sqlmap, Object parameter) {
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			List<E> result = sharedSession.selectList(sqlmap, parameter);
+			succeeded = true;
+			return result;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+	}
+
+	/**
+	 * 从分片查询一条数据，不分片时从只读库（没有只读库时为主库）查询。
+	 */
+	private <T> T readOne(int shard, String sqlmap, Object parameter) {
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			ReadReplica replica = (shard < 0) ? selectReplica() : null;
+			SqlSession tempSession = (shard < 0) ? getReadSession(replica) : getSession(shard);
+			try {
+				T result = tempSession.selectOne(sqlmap, parameter);
+				succeeded = true;
+				return result;
+			} finally {
+				closeReadSession(replica, tempSession);
+			}
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+	}
+
+	/**
+	 * 从分片查询一些数据，不分片时从只读库（没有只读库时为主库）查询。
+	 */
+	private <E> List<E> readList(int shard, String sqlmap, Object parameter) {
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			ReadReplica replica = (shard < 0) ? selectReplica() : null;
+			SqlSession tempSession = (shard < 0) ? getReadSession(replica) : getSession(shard);
+			try {
+				List<E> result = tempSession.selectList(sqlmap, parameter);
+				succeeded = true;
+				return result;
+			} finally {
+				closeReadSession(replica, tempSession);
+			}
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+	}
+
+	/**
+	 * 用于在全部分片上并行执行同一个查询，并按分片的顺序合并结果。没有配置分片时查询主库。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 全部分片的查询结果
+	 */
+	@Override
+	public <E> List<E> selectListFromShards(String sqlmap, Object parameter) {
+		return selectListFromShards(sqlmap, parameter, null);
+	}
+
+	/**
+	 * 用于在全部分片上并行执行同一个查询，并将各分片的结果有序合并。没有配置分片时查询主库。<br/>
+	 * 各分片的结果需要已经按comparator的顺序排列（即sqlmap中的ORDER BY与comparator一致），合并时不会重新排序；
+	 * 相等的元素按分片的顺序排列。任何一个分片查询失败时，将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @param comparator
+	 *           各分片结果的排序规则，为null时按分片的顺序直接拼接
+	 * @return 全部分片的查询结果
+	 */
+	@Override
+	public <E> List<E> selectListFromShards(final String sqlmap, final Object parameter, Comparator<? super E> comparator) {
+		if (shards.isEmpty()) {
+			return readList(-1, sqlmap, parameter);
+		}
+		// 除第一个分片外都在异步线程中查询，第一个分片在当前线程中查询
+		List<Future<List<E>>> futures = new ArrayList<Future<List<E>>>();
+		List<List<E>> results = new ArrayList<List<E>>();
+		try {
+			for (int i = 1; i < shards.size(); i++) {
+				final int shard = i;
+				futures.add(asyncExecutor.submit(new Callable<List<E>>() {
+					@Override
+					public List<E> call() {
+						return readList(shard, sqlmap, parameter);
+					}
+				}));
+			}
+			results.add(this.<E> readList(0, sqlmap, parameter));
+			for (Future<List<E>> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("等待分片查询时被中断！", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException("分片查询失败！", cause);
+		} finally {
+			for (Future<List<E>> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return mergeSorted(results, comparator);
+	}
+
+	/**
+	 * 多路归并各分片已排序的结果，comparator为null时直接拼接。
+	 */
+	private static <E> List<E> mergeSorted(List<List<E>> lists, final Comparator<? super E> comparator) {
+		int size = 0;
+		for (List<E> list : lists) {
+			size += list.size();
+		}
+		List<E> merged = new ArrayList<E>(size);
+		if (comparator == null) {
+			for (List<E> list : lists) {
+				merged.addAll(list);
+			}
+			return merged;
+		}
+		// 队列中的元素为{分片下标, 该分片的当前位置}
+		PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(lists.size(), 1), new ShardHeadComparator<E>(lists,
+				comparator));
+		for (int i = 0; i < lists.size(); i++) {
+			if (!lists.get(i).isEmpty()) {
+				heads.add(new int[] { i, 0 });
+			}
+		}
+		while (!heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<E> list = lists.get(head[0]);
+			merged.add(list.get(head[1]));
+			if (++head[1] < list.size()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * 比较各分片当前位置的元素，相等时分片下标小的在前。
+	 */
+	private static class ShardHeadComparator<E> implements Comparator<int[]> {
+		private final List<List<E>> lists;
+		private final Comparator<? super E> comparator;
+
+		private ShardHeadComparator(List<List<E>> lists, Comparator<? super E> comparator) {
+			this.lists = lists;
+			this.comparator = comparator;
+		}
+
+		@Override
+		public int compare(int[] a, int[] b) {
+			int result = comparator.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+			return (result != 0) ? result : a[0] - b[0];
+		}
+	}
+
+	/**
+	 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param handler
+	 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+	 */
+	@Override
+	public void select(String sqlmap, ResultHandler handler) {
+		select(sqlmap, null, 0, handler);
+	}
+
+	/**
+	 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @param handler
+	 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+	 */
+	@Override
+	public void select(String sqlmap, Object parameter, ResultHandler handler) {
+		select(sqlmap, parameter, 0, handler);
+	}
+
+	/**
+	 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。<br/>
+	 * 未打开共享Session时，Session在查询结束（包括回调抛出异常）后立即释放；否则使用共享Session，不会将其关闭。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @param fetchSize
+	 *           每次从数据库获取的行数，小于等于0时使用sqlmap中的设置
+	 * @param handler
+	 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+	 */
+	@Override
+	public void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler) {
+		select(currentSharedSession(), sqlmap, parameter, fetchSize, handler);
+	}
+
+	/**
+	 * 逐条处理查询结果，参见{@link #select(String, Object, int, ResultHandler)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	private void select(SqlSession sharedSession, String sqlmap, Object parameter, int fetchSize, ResultHandler handler) {
+		int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		statementInterceptor.setFetchSize(fetchSize);
+		// 共享Session中的操作同样受隔离舱限制
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			if (tempSession == null) {
+				ReadReplica replica = (shard < 0) ? selectReplica() : null;
+				tempSession = (shard < 0) ? getReadSession(replica) : getSession(shard);
+				try {
+					tempSession.select(sqlmap, parameter, handler);
+				} finally {
+					closeReadSession(replica, tempSession);
+				}
+			} else {
+				tempSession.select(sqlmap, parameter, handler);
+			}
+			succeeded = true;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+			statementInterceptor.clearFetchSize();
+		}
+	}
+
+	/**
+	 * 用于创建一个批量加载器，将多次按键查询合并为一次查询，参见{@link BatchLoader}。
+	 * 
+	 * @param sqlmap
+	 *           按键的List批量查询的sqlmap名称
+	 * @param keyExtractor
+	 *           用于从查询结果中取出键
+	 * @return 批量加载器，一般在一次请求的范围内使用
+	 */
+	@Override
+	public <K, V> BatchLoader<K, V> getBatchLoader(String sqlmap, KeyExtractor<K, V> keyExtractor) {
+		return new BatchLoader<K, V>(this, sqlmap, keyExtractor, BatchLoader.DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * 用于创建一个批量加载器，将多次按键查询合并为一次查询，参见{@link BatchLoader}。
+	 * 
+	 * @param sqlmap
+	 *           按键的List批量查询的sqlmap名称
+	 * @param keyExtractor
+	 *           用于从查询结果中取出键
+	 * @param maxBatchSize
+	 *           一次查询最多包含的键的数量，超过时将分为多次查询
+	 * @return 批量加载器，一般在一次请求的范围内使用
+	 */
+	@Override
+	public <K, V> BatchLoader<K, V> getBatchLoader(String sqlmap, KeyExtractor<K, V> keyExtractor, int maxBatchSize) {
+		return new BatchLoader<K, V>(this, sqlmap, keyExtractor, maxBatchSize);
+	}
+
+	/**
+	 * 用于以键集方式分页遍历查询结果，每页的代价与翻到多深无关，参见{@link KeysetIterator}。<br/>
+	 * 每页是一次独立的非事务查询，遍历期间不占用Session。
+	 * 
+	 * @param sqlmap
+	 *           接收{@link KeysetPage}作为参数的sqlmap名称
+	 * @param parameter
+	 *           查询参数，在sqlmap中为“parameter”
+	 * @param keyExtractor
+	 *           用于从记录中取出键
+	 * @param pageSize
+	 *           每页的最大条数
+	 * @return 在遍历时才查询的迭代器
+	 */
+	@Override
+	public <K, V> KeysetIterator<K, V> selectByKeyset(final String sqlmap, Object parameter,
+			KeyExtractor<K, V> keyExtractor, int pageSize) {
+		return new KeysetIterator<K, V>(parameter, keyExtractor, pageSize) {
+			@Override
+			List<V> selectPage(KeysetPage<K> keysetPage) {
+				return selectList(sqlmap, keysetPage);
+			}
+		};
+	}
+
+	/**
+	 * 用于插入数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int insert(String sqlmap) {
+		return insert(sqlmap, null);
+	}
+
+	/**
+	 * 用于插入数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int insert(String sqlmap, Object parameter) {
+		return insert(currentSharedSession(), sqlmap, parameter);
+	}
+
+	/**
+	 * 插入数据，参见{@link #insert(String, Object)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	private int insert(SqlSession sharedSession, String sqlmap, Object parameter) {
+		int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		int result;
+		// 共享Session中的操作同样受隔离舱限制
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			if (tempSession == null) {
+				tempSession = getSession(shard);
+				try {
+					result = tempSession.insert(sqlmap, parameter);
+				} finally {
+					tempSession.close();
+				}
+			} else {
+				result = tempSession.insert(sqlmap, parameter);
+			}
+			succeeded = true;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+		invalidateCache(sqlmap);
+		return result;
+	}
+
+	/**
+	 * 用于更新数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int update(String sqlmap) {
+		return update(sqlmap, null);
+	}
+
+	/**
+	 * 用于更新数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int update(String sqlmap, Object parameter) {
+		return update(currentSharedSession(), sqlmap, parameter);
+	}
+
+	/**
+	 * 更新数据，参见{@link #update(String, Object)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	private int update(SqlSession sharedSession, String sqlmap, Object parameter) {
+		int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		int result;
+		// 共享Session中的操作同样受隔离舱限制
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			if (tempSession == null) {
+				tempSession = getSession(shard);
+				try {
+					result = tempSession.update(sqlmap, parameter);
+				} finally {
+					tempSession.close();
+				}
+			} else {
+				result = tempSession.update(sqlmap, parameter);
+			}
+			succeeded = true;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+		invalidateCache(sqlmap);
+		return result;
+	}
+
+	/**
+	 * 用于批量插入数据，等同于以默认的分块大小{@value #DEFAULT_BATCH_SIZE}调用{@link #insertAll(String, Collection, int)}。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameters
+	 *           每个元素对应一次插入的参数对象
+	 * @return 返回被影响的总行数。
+	 */
+	@Override
+	public int insertAll(String sqlmap, Collection<?> parameters) {
+		return insertAll(sqlmap, parameters, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * 用于批量插入数据。参数按chunkSize分块，每块在同一个Session中以JDBC批量的方式执行并单独提交。<br/>
+	 * 执行失败时当前块被回滚并抛出运行时异常，此前的块已经提交，不会被回滚；需要整体提交时请使用事务的
+	 * {@link Transaction#insertAll(String, Collection)}。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameters
+	 *           每个元素对应一次插入的参数对象
+	 * @param chunkSize
+	 *           每块的最大语句数，必须大于0
+	 * @return 返回被影响的总行数，驱动无法给出行数（{@link java.sql.Statement#SUCCESS_NO_INFO}）的语句不计入。
+	 */
+	@Override
+	public int insertAll(String sqlmap, Collection<?> parameters, int chunkSize) {
+		return writeAll(sqlmap, parameters, chunkSize, true);
+	}
+
+	/**
+	 * 用于批量更新数据，等同于以默认的分块大小{@value #DEFAULT_BATCH_SIZE}调用{@link #updateAll(String, Collection, int)}。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameters
+	 *           每个元素对应一次更新的参数对象
+	 * @return 返回被影响的总行数。
+	 */
+	@Override
+	public int updateAll(String sqlmap, Collection<?> parameters) {
+		return updateAll(sqlmap, parameters, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * 用于批量更新数据。参数按chunkSize分块，每块在同一个Session中以JDBC批量的方式执行并单独提交。<br/>
+	 * 执行失败时当前块被回滚并抛出运行时异常，此前的块已经提交，不会被回滚；需要整体提交时请使用事务的
+	 * {@link Transaction#updateAll(String, Collection)}。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameters
+	 *           每个元素对应一次更新的参数对象
+	 * @param chunkSize
+	 *           每块的最大语句数，必须大于0
+	 * @return 返回被影响的总行数，驱动无法给出行数（{@link java.sql.Statement#SUCCESS_NO_INFO}）的语句不计入。
+	 */
+	@Override
+	public int updateAll(String sqlmap, Collection<?> parameters, int chunkSize) {
+		return writeAll(sqlmap, parameters, chunkSize, false);
+	}
+
+	/**
+	 * 分块批量执行写操作，每块使用一个批量模式的Session并单独提交。共享Session不支持批量模式，所以不使用共享Session。
+	 */
+	private int writeAll(String sqlmap, Collection<?> parameters, int chunkSize, boolean insert) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize必须大于0！");
+		}
+		// 整个批量操作占用一个名额，其耗时取决于数据量，不用于调整隔离舱的上限
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		try {
+			return shards.isEmpty() ? writeAll(-1, sqlmap, parameters, chunkSize, insert) : writeShards(sqlmap, parameters,
+					chunkSize, insert);
+		} finally {
+			exitBulkhead(bulkhead, start, false);
+		}
+	}
+
+	/**
+	 * 先按分片分组，再在各分片内分块执行。
+	 */
+	private int writeShards(String sqlmap, Collection<?> parameters, int chunkSize, boolean insert) {
+		Map<Integer, List<Object>> groups = new LinkedHashMap<Integer, List<Object>>();
+		for (Object parameter : parameters) {
+			Integer shard = resolveShard(sqlmap, parameter);
+			List<Object> group = groups.get(shard);
+			if (group == null) {
+				group = new ArrayList<Object>();
+				groups.put(shard, group);
+			}
+			group.add(parameter);
+		}
+		int result = 0;
+		for (Map.Entry<Integer, List<Object>> group : groups.entrySet()) {
+			result += writeAll(group.getKey(), sqlmap, group.getValue(), chunkSize, insert);
+		}
+		return result;
+	}
+
+	private int writeAll(int shard, String sqlmap, Collection<?> parameters, int chunkSize, boolean insert) {
+		int result = 0;
+		SqlSession tempSession = null;
+		int pending = 0;
+		try {
+			for (Object parameter : parameters) {
+				if (tempSession == null) {
+					tempSession = getTranSession(shard, ExecutorType.BATCH);
+				}
+				if (insert) {
+					tempSession.insert(sqlmap, parameter);
+				} else {
+					tempSession.update(sqlmap, parameter);
+				}
+				if (++pending >= chunkSize) {
+					result += countUpdates(tempSession.flushStatements());
+					tempSession.commit();
+					tempSession.close();
+					tempSession = null;
+					pending = 0;
+				}
+			}
+			if (tempSession != null) {
+				result += countUpdates(tempSession.flushStatements());
+				tempSession.commit();
+			}
+		} finally {
+			if (tempSession != null) {
+				// 未提交的块在关闭时回滚
+				tempSession.close();
+			}
+			invalidateCache(sqlmap);
+		}
+		return result;
+	}
+
+	/**
+	 * 用于延迟插入数据，适用于不需要等待结果的插入（如审计、日志记录）。记录被放入有界队列后立即返回，
+	 * 由后台线程按writeBehindBatchSize条或writeBehindInterval毫秒分组，以JDBC批量的方式写入并提交。<br/>
+	 * 同一个sqlmap的记录按调用的顺序写入，不同sqlmap之间的顺序不做保证；写入失败的记录只记录到日志中，不会通知调用者。
+	 * 队列已满时按writeBehindOverflow处理。不参与当前线程的事务及共享Session。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，放入队列后不应再修改
+	 */
+	@Override
+	public void insertLater(String sqlmap, Object parameter) {
+		writeBehindQueue.offer(resolveShard(sqlmap, parameter), sqlmap, parameter);
+	}
+
+	/**
+	 * 用于等待此前延迟插入的数据全部写入（或写入失败）。
+	 */
+	@Override
+	public void flushPendingWrites() {
+		try {
+			writeBehindQueue.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("等待延迟写入时被中断！", e);
+		}
+	}
+
+	/**
+	 * 汇总批量执行结果中被影响的行数。
+	 */
+	private static int countUpdates(List<BatchResult> batchResults) {
+		int count = 0;
+		for (BatchResult batchResult : batchResults) {
+			for (int updateCount : batchResult.getUpdateCounts()) {
+				if (updateCount > 0) {
+					count += updateCount;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 用于删除数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int delete(String sqlmap) {
+		return delete(sqlmap, null);
+	}
+
+	/**
+	 * 用于删除数据，执行失败将抛出运行时异常。
+	 * 
+	 * @param sqlmap
+	 *           需要调用的sqlmap名称
+	 * @param parameter
+	 *           需要传入的参数对象，与sqlmap中定义的类型相同
+	 * @return 返回被影响的行数。
+	 */
+	@Override
+	public int delete(String sqlmap, Object parameter) {
+		return delete(currentSharedSession(), sqlmap, parameter);
+	}
+
+	/**
+	 * 删除数据，参见{@link #delete(String, Object)}。
+	 * 
+	 * @param sharedSession
+	 *           使用的共享Session，为null时不使用共享Session
+	 */
+	private int delete(SqlSession sharedSession, String sqlmap, Object parameter) {
+		int shard = resolveShard(sqlmap, parameter);
+		SqlSession tempSession = (shard < 0) ? sharedSession : null;
+		int result;
+		// 共享Session中的操作同样受隔离舱限制
+		ConcurrencyLimiter bulkhead = bulkheadOf(sqlmap);
+		long start = enterBulkhead(bulkhead);
+		boolean succeeded = false;
+		try {
+			if (tempSession == null) {
+				tempSession = getSession(shard);
+				try {
+					result = tempSession.delete(sqlmap, parameter);
+				} finally {
+					tempSession.close();
+				}
+			} else {
+				result = tempSession.delete(sqlmap, parameter);
+			}
+			succeeded = true;
+		} finally {
+			exitBulkhead(bulkhead, start, succeeded);
+		}
+		invalidateCache(sqlmap);
+		return result;
 	}
 
 	/**
-	 * 根据参数，初始化一个事务对象。（除非您了解该功能，否则不推荐使用非自动关闭的事务）
+	 * 用于在异步线程中执行一组数据库操作。执行期间异步线程会打开一个共享Session，任务中的全部非事务操作（包括Mapper）
+	 * 都将共享该Session，任务结束后Session即被关闭，参见{@link #runWithSharedSession(Callable)}。<br/>
+	 * 任务使用自己的Session，需要共享提交者的Session时，提交前使用{@link #propagateSharedSession(Callable)}包装任务。
 	 * 
-	 * @param autoClose
-	 *           是否需要在提交或回滚后自动释放数据库连接。
+	 * @param task
+	 *           需要执行的任务
+	 * @return 任务的执行结果
 	 */
 	@Override
-	public Transaction getTransaction(boolean autoClose) {
-		return new DefaultTransaction(autoClose);
+	public <T> Future<T> submit(final Callable<T> task) {
+		return asyncExecutor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return runWithSharedSession(task);
+			}
+		});
 	}
 
 	/**
-	 * 用于从数据库查询一条数据。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @return 返回一个sqlmap中定义的类型的结果 当没有数据返回时，函数返回null。<br/>
-	 *         值得注意的是，当数据多于一条时，会抛出异常： {@link org.apache.ibatis.exceptions.TooManyResultsException}
+	 * 用于异步地从数据库查询一条数据，参见{@link #selectOne(String)}。
 	 */
 	@Override
-	public <T> T selectOne(String sqlmap) {
-		return selectOne(sqlmap, null);
+	public <T> Future<T> selectOneAsync(String sqlmap) {
+		return selectOneAsync(sqlmap, null);
 	}
 
 	/**
-	 * 用于从数据库查询一条数据。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @param parameter
-	 *           需要传入的参数对象，与sqlmap中定义的类型相同
-	 * @return 返回一个sqlmap中定义的类型的结果 当没有数据返回时，函数返回null。<br/>
-	 *         值得注意的是，当数据多于一条时，会抛出异常： {@link org.apache.ibatis.exceptions.TooManyResultsException}
+	 * 用于异步地从数据库查询一条数据，参见{@link #selectOne(String, Object)}。
 	 */
 	@Override
-	public <T> T selectOne(String sqlmap, Object parameter) {
-		SqlSession tempSession = sharedSession.get();
-		T result;
-		if (tempSession == null) {
-			tempSession = getSession();
-			try {
-				result = tempSession.selectOne(sqlmap, parameter);
-			} finally {
-				tempSession.close();
+	public <T> Future<T> selectOneAsync(final String sqlmap, final Object parameter) {
+		return asyncExecutor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return selectOne(sqlmap, parameter);
 			}
-		} else {
-			result = tempSession.selectOne(sqlmap, parameter);
-		}
-		return result;
+		});
 	}
 
 	/**
-	 * 用于从数据库查询一些数据。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @return 返回一个sqlmap中定义的类型的结果的List类型对象。 当没有数据返回时，函数返回一个空的List。
+	 * 用于异步地从数据库查询一些数据，参见{@link #selectList(String)}。
 	 */
 	@Override
-	public <E> List<E> selectList(String sqlmap) {
-		return selectList(sqlmap, null);
+	public <E> Future<List<E>> selectListAsync(String sqlmap) {
+		return selectListAsync(sqlmap, null);
 	}
 
 	/**
-	 * 用于从数据库查询一些数据。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @param parameter
-	 *           需要传入的参数对象，与sqlmap中定义的类型相同
-	 * @return 返回一个sqlmap中定义的类型的结果的List类型对象。 当没有数据返回时，函数返回一个空的List。
+	 * 用于异步地从数据库查询一些数据，参见{@link #selectList(String, Object)}。
 	 */
 	@Override
-	public <E> List<E> selectList(String sqlmap, Object parameter) {
-		SqlSession tempSession = sharedSession.get();
-		List<E> result;
-		if (tempSession == null) {
-			tempSession = getSession();
-			try {
-				result = tempSession.selectList(sqlmap, parameter);
-			} finally {
-				tempSession.close();
+	public <E> Future<List<E>> selectListAsync(final String sqlmap, final Object parameter) {
+		return asyncExecutor.submit(new Callable<List<E>>() {
+			@Override
+			public List<E> call() throws Exception {
+				return selectList(sqlmap, parameter);
 			}
-		} else {
-			result = tempSession.selectList(sqlmap, parameter);
-		}
-		return result;
+		});
 	}
 
 	/**
-	 * 用于插入数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @return 返回被影响的行数。
+	 * 用于异步地插入数据，参见{@link #insert(String)}。
 	 */
 	@Override
-	public int insert(String sqlmap) {
-		return insert(sqlmap, null);
+	public Future<Integer> insertAsync(String sqlmap) {
+		return insertAsync(sqlmap, null);
 	}
 
 	/**
-	 * 用于插入数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @param parameter
-	 *           需要传入的参数对象，与sqlmap中定义的类型相同
-	 * @return 返回被影响的行数。
+	 * 用于异步地插入数据，参见{@link #insert(String, Object)}。
 	 */
 	@Override
-	public int insert(String sqlmap, Object parameter) {
-		SqlSession tempSession = sharedSession.get();
-		int result;
-		if (tempSession == null) {
-			tempSession = getSession();
-			try {
-				result = tempSession.insert(sqlmap, parameter);
-			} finally {
-				tempSession.close();
+	public Future<Integer> insertAsync(final String sqlmap, final Object parameter) {
+		return asyncExecutor.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return insert(sqlmap, parameter);
 			}
-		} else {
-			result = tempSession.insert(sqlmap, parameter);
-		}
-		return result;
+		});
 	}
 
 	/**
-	 * 用于更新数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @return 返回被影响的行数。
+	 * 用于异步地更新数据，参见{@link #update(String)}。
 	 */
 	@Override
-	public int update(String sqlmap) {
-		return update(sqlmap, null);
+	public Future<Integer> updateAsync(String sqlmap) {
+		return updateAsync(sqlmap, null);
 	}
 
 	/**
-	 * 用于更新数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @param parameter
-	 *           需要传入的参数对象，与sqlmap中定义的类型相同
-	 * @return 返回被影响的行数。
+	 * 用于异步地更新数据，参见{@link #update(String, Object)}。
 	 */
 	@Override
-	public int update(String sqlmap, Object parameter) {
-		SqlSession tempSession = sharedSession.get();
-		int result;
-		if (tempSession == null) {
-			tempSession = getSession();
-			try {
-				result = tempSession.update(sqlmap, parameter);
-			} finally {
-				tempSession.close();
+	public Future<Integer> updateAsync(final String sqlmap, final Object parameter) {
+		return asyncExecutor.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return update(sqlmap, parameter);
 			}
-		} else {
-			result = tempSession.update(sqlmap, parameter);
-		}
-		return result;
+		});
 	}
 
 	/**
-	 * 用于删除数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @return 返回被影响的行数。
+	 * 用于异步地删除数据，参见{@link #delete(String)}。
 	 */
 	@Override
-	public int delete(String sqlmap) {
-		return delete(sqlmap, null);
+	public Future<Integer> deleteAsync(String sqlmap) {
+		return deleteAsync(sqlmap, null);
 	}
 
 	/**
-	 * 用于删除数据，执行失败将抛出运行时异常。
-	 * 
-	 * @param sqlmap
-	 *           需要调用的sqlmap名称
-	 * @param parameter
-	 *           需要传入的参数对象，与sqlmap中定义的类型相同
-	 * @return 返回被影响的行数。
+	 * 用于异步地删除数据，参见{@link #delete(String, Object)}。
 	 */
 	@Override
-	public int delete(String sqlmap, Object parameter) {
-		SqlSession tempSession = sharedSession.get();
-		int result;
-		if (tempSession == null) {
-			tempSession = getSession();
-			try {
-				result = tempSession.delete(sqlmap, parameter);
-			} finally {
-				tempSession.close();
+	public Future<Integer> deleteAsync(final String sqlmap, final Object parameter) {
+		return asyncExecutor.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return delete(sqlmap, parameter);
 			}
-		} else {
-			result = tempSession.delete(sqlmap, parameter);
+		});
+	}
+
+	/**
+	 * 异步操作线程的工厂，创建带有名称的守护线程。
+	 */
+	private static class AsyncThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MyBatisManager-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
-		return result;
 	}
 
 	/**
@@ -333,20 +2181,72 @@ public class MyBatisManagerImpl implements MyBatisManager {
 	public class DefaultTransaction implements Transaction {
 		private SqlSession session;
 		private final boolean autoClose;
-		private final HashMap<CallbackType, List<Callback>> callbackMap = new HashMap<CallbackType, List<Callback>>();
+		private final ExecutorType executorType;
+		private final HashMap<CallbackType, List<TransactionCallback>> callbackMap = new HashMap<CallbackType, List<TransactionCallback>>();
+		private final HashMap<CallbackType, List<TransactionCallback>> asyncCallbackMap = new HashMap<CallbackType, List<TransactionCallback>>();
+		// 保证同一事务的异步回调按顺序执行，第一次使用时创建
+		private SerialExecutor asyncCallbackQueue;
+		// 批量模式下的状态
+		private int batchSize = DEFAULT_BATCH_SIZE;
+		private int pendingStatements;
+		private List<BatchResult> batchResults = new ArrayList<BatchResult>();
+		private List<BatchResult> lastBatchResults = Collections.emptyList();
+		// 提交时需要使查询结果缓存失效的命名空间
+		private final Set<String> dirtyNamespaces = new HashSet<String>();
+		// 提交时需要使其失效的Mapper函数缓存的命名空间
+		private final Set<String> pendingEvictions = new HashSet<String>();
+		// 事务开始的时间，用于统计事务耗时
+		private long beginTime;
+		// 提交或回滚之后是否还没有执行过操作，此时关闭Session不算作回滚
+		private boolean ended;
+		// 连接泄漏检测
+		private final Throwable allocationSite = leakDetector.allocationSite();
+		private LeakDetector.Tracker leakTracker;
+		// 事务所在的分片，-1为主库；打开Session或显式指定分片键后绑定，之后不能访问其他分片
+		private int shard = -1;
+		private boolean pinned;
+		// 事务传播：是否通过传播方式创建（只有这样的事务才会成为当前线程的事务），成为当前线程的事务之前的事务，
+		// 以及内层加入的事务是否要求回滚
+		private final boolean propagating;
+		private WeakReference<DefaultTransaction> previous;
+		private boolean bound;
+		private boolean rollbackOnly;
+		// 在连接打开前加入的嵌套事务，连接打开后立即为其设置保存点
+		private final List<JoinedTransaction> pendingSavepoints = new ArrayList<JoinedTransaction>();
 
 		/**
 		 * 根据参数，初始化一个事务对象。（除非您了解该功能，否则不推荐使用非自动关闭的事务）
 		 * 
 		 * @param autoClose
 		 *           是否需要在提交或回滚后自动释放数据库连接。
+		 * @param executorType
+		 *           执行器类型
 		 */
-		private DefaultTransaction(boolean autoClose) {
+		private DefaultTransaction(boolean autoClose, ExecutorType executorType) {
+			this(autoClose, executorType, false);
+		}
+
+		/**
+		 * 根据参数，初始化一个事务对象。
+		 * 
+		 * @param autoClose
+		 *           是否需要在提交或回滚后自动释放数据库连接。
+		 * @param executorType
+		 *           执行器类型
+		 * @param propagating
+		 *           是否通过{@link MyBatisManagerImpl#getTransaction(Propagation, ExecutorType)}创建，
+		 *           为true时事务成为当前线程的事务，直到被关闭
+		 */
+		private DefaultTransaction(boolean autoClose, ExecutorType executorType, boolean propagating) {
 			this.autoClose = autoClose;
+			this.executorType = (executorType == null) ? ExecutorType.SIMPLE : executorType;
+			this.propagating = propagating;
 			// 初始化callback列表
 			for (CallbackType type : CallbackType.values()) {
-				callbackMap.put(type, new ArrayList<Callback>());
+				callbackMap.put(type, new ArrayList<TransactionCallback>());
+				asyncCallbackMap.put(type, new ArrayList<TransactionCallback>());
 			}
+			bind();
 		}
 
 		/**
@@ -355,9 +2255,28 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		public void commit() {
 			if (session == null) {
 				FrameLogger.warn("提交了一个空事务！");
+				if (autoClose) {
+					unbind();
+				}
+			} else if (rollbackOnly) {
+				rollback();
+				throw new IllegalStateException("加入该事务的内层事务已回滚，整个事务已被回滚！");
 			} else {
 				invokeCallback(CallbackType.beforeCommit);
+				// 批量模式下，session.commit()虽然也会发送暂存的语句，但会丢弃执行结果，所以需要先行发送
+				flushStatements();
 				session.commit();
+				metrics.recordCommit(System.nanoTime() - beginTime);
+				beginTime = System.nanoTime();
+				ended = true;
+				lastBatchResults = batchResults;
+				batchResults = new ArrayList<BatchResult>();
+				if (resultCache != null) {
+					resultCache.invalidate(dirtyNamespaces);
+				}
+				dirtyNamespaces.clear();
+				mapperCaches.evict(pendingEvictions);
+				pendingEvictions.clear();
 				invokeCallback(CallbackType.afterCommit);
 				// 废弃全部回调函数
 				clearCallback(null);
@@ -373,9 +2292,16 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		public void rollback() {
 			if (session == null) {
 				FrameLogger.warn("回滚了一个空事务！");
+				if (autoClose) {
+					unbind();
+				}
 			} else {
 				invokeCallback(CallbackType.beforeRollback);
 				session.rollback();
+				metrics.recordRollback(System.nanoTime() - beginTime);
+				beginTime = System.nanoTime();
+				ended = true;
+				discardPending();
 				invokeCallback(CallbackType.afterRollback);
 				// 废弃全部回调函数
 				clearCallback(null);
@@ -391,11 +2317,25 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public void close() {
 			if (session == null) {
-				FrameLogger.warn("重复关闭了事务！");
+				if (!bound) {
+					FrameLogger.warn("重复关闭了事务！");
+				}
+				unbind();
 			} else {
 				// 如果有callback则回调，证明事务没有提交过，直接关闭
 				invokeCallback(CallbackType.beforeRollback);
-				session.close();
+				try {
+					session.close();
+				} finally {
+					leakTracker.release();
+					leakTracker = null;
+					unbind();
+				}
+				// 关闭未提交的Session即为回滚
+				if (!ended) {
+					metrics.recordRollback(System.nanoTime() - beginTime);
+				}
+				discardPending();
 				invokeCallback(CallbackType.afterRollback);
 				session = null;
 				// 废弃全部回调函数
@@ -408,11 +2348,175 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 * 
 		 * @return 属于当前事务的Mapper
 		 */
+		@SuppressWarnings("unchecked")
 		public <T> T getMapper(Class<T> clazz) {
+			openSession();
+			return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, new TransactionMapperProxy(
+					clazz, this));
+		}
+
+		/**
+		 * 在事务的Session上执行Mapper函数。
+		 */
+		private Object execute(MapperInvoker invoker, Object[] args) {
+			openSession();
+			if (invoker.select) {
+				// 保证能读到之前暂存的写操作的结果
+				flushStatements();
+			}
+			Object result = invoker.mapperMethod.execute(session, args);
+			if (!invoker.select) {
+				afterWrite();
+				markDirty(invoker.statement);
+			}
+			if (invoker.evicts != null) {
+				pendingEvictions.addAll(invoker.evicts);
+			}
+			return result;
+		}
+
+		/**
+		 * 在第一次需要时打开事务的Session。
+		 */
+		private void openSession() {
+			openSession(shard);
+		}
+
+		/**
+		 * 在第一次需要时打开事务的Session，并将事务绑定到该分片。
+		 * 
+		 * @param target
+		 *           {@link #route(String, Object)}所确定的分片
+		 */
+		private void openSession(int target) {
+			ended = false;
 			if (session == null) {
-				session = getTranSession();
+				shard = target;
+				pinned = true;
+				session = getTranSession(target, executorType);
+				beginTime = System.nanoTime();
+				leakTracker = leakDetector.track(this, session, allocationSite);
+				// 非自动关闭的事务在关闭连接后可以再次使用
+				bind();
+				for (JoinedTransaction joined : pendingSavepoints) {
+					joined.setSavepoint();
+				}
+				pendingSavepoints.clear();
+			}
+		}
+
+		/**
+		 * 使事务成为当前线程的事务，之后开启的事务可以加入该事务。只有通过传播方式创建的事务才会绑定。
+		 */
+		private void bind() {
+			if (propagating && !bound) {
+				previous = currentTransaction.get();
+				currentTransaction.set(new WeakReference<DefaultTransaction>(this));
+				bound = true;
+			}
+		}
+
+		/**
+		 * 关闭时恢复当前线程之前的事务。
+		 */
+		private void unbind() {
+			if (!bound) {
+				return;
+			}
+			WeakReference<DefaultTransaction> current = currentTransaction.get();
+			if (current != null && current.get() == this) {
+				if (previous == null) {
+					currentTransaction.remove();
+				} else {
+					currentTransaction.set(previous);
+				}
+			}
+			previous = null;
+			bound = false;
+			pendingSavepoints.clear();
+		}
+
+		/**
+		 * 确定操作所在的分片。不分片的操作使用事务已绑定的分片；事务已绑定其他分片时抛出异常。
+		 * 
+		 * @return 分片的下标，-1为主库
+		 */
+		private int route(String sqlmap, Object parameter) {
+			int target = resolveShard(sqlmap, parameter);
+			if (!pinned) {
+				return target;
+			}
+			if (target >= 0 && target != shard) {
+				throw new IllegalStateException("事务已绑定到分片" + shard + "，不能在分片" + target + "上执行：" + sqlmap);
+			}
+			return shard;
+		}
+
+		/**
+		 * 用于设置批量模式下自动发送暂存语句的阈值，暂存的语句数量达到该值时将自动执行一次{@link #flushStatements()}。<br/>
+		 * 非批量模式下该设置无效。
+		 * 
+		 * @param batchSize
+		 *           自动发送的阈值，必须大于0
+		 */
+		public void setBatchSize(int batchSize) {
+			if (batchSize <= 0) {
+				throw new IllegalArgumentException("batchSize必须大于0！");
+			}
+			this.batchSize = batchSize;
+		}
+
+		/**
+		 * 用于将批量模式下暂存的语句立即发送到数据库（不会提交事务）。
+		 * 
+		 * @return 本次发送的各条语句的执行结果，非批量模式或没有暂存语句时返回一个空的List。
+		 */
+		public List<BatchResult> flushStatements() {
+			if (session == null || executorType != ExecutorType.BATCH) {
+				return Collections.emptyList();
+			}
+			pendingStatements = 0;
+			List<BatchResult> results = session.flushStatements();
+			batchResults.addAll(results);
+			return results;
+		}
+
+		/**
+		 * 用于获取最近一次提交的事务中，以批量模式发送的全部语句的执行结果（包括自动发送的部分）。
+		 * 
+		 * @return 各条语句的执行结果，可以通过{@link BatchResult#getUpdateCounts()}获取被影响的行数。
+		 */
+		public List<BatchResult> getBatchResults() {
+			return lastBatchResults;
+		}
+
+		/**
+		 * 写操作之后调用，批量模式下暂存语句达到阈值时自动发送。
+		 */
+		private void afterWrite() {
+			if (executorType == ExecutorType.BATCH && ++pendingStatements >= batchSize) {
+				flushStatements();
+			}
+		}
+
+		/**
+		 * 回滚或关闭时丢弃尚未提交的状态（批量模式下暂存的语句、需要使缓存失效的命名空间、内层事务的回滚标记）。
+		 */
+		private void discardPending() {
+			rollbackOnly = false;
+			pendingStatements = 0;
+			batchResults.clear();
+			dirtyNamespaces.clear();
+			pendingEvictions.clear();
+		}
+
+		/**
+		 * 写操作之后调用，记录需要在提交时使查询结果缓存失效的命名空间。
+		 */
+		private void markDirty(String sqlmap) {
+			if (resultCache != null) {
+				dirtyNamespaces.add(namespaceOf(sqlmap));
 			}
-			return session.getMapper(clazz);
 		}
 
 		/**
@@ -439,12 +2543,16 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public <T> T selectOne(String sqlmap, Object parameter) {
 			if (session != null) {
+				route(sqlmap, parameter);
+				// 保证能读到之前暂存的写操作的结果
+				flushStatements();
 				return session.selectOne(sqlmap, parameter);
 			} else {
-				SqlSession tempSession = sharedSession.get();
+				int target = route(sqlmap, parameter);
+				SqlSession tempSession = (target < 0) ? currentSharedSession() : null;
 				T result;
 				if (tempSession == null) {
-					tempSession = getSession();
+					tempSession = getSession(target);
 					try {
 						result = tempSession.selectOne(sqlmap, parameter);
 					} finally {
@@ -479,12 +2587,16 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public <E> List<E> selectList(String sqlmap, Object parameter) {
 			if (session != null) {
+				route(sqlmap, parameter);
+				// 保证能读到之前暂存的写操作的结果
+				flushStatements();
 				return session.selectList(sqlmap, parameter);
 			} else {
-				SqlSession tempSession = sharedSession.get();
+				int target = route(sqlmap, parameter);
+				SqlSession tempSession = (target < 0) ? currentSharedSession() : null;
 				List<E> result;
 				if (tempSession == null) {
-					tempSession = getSession();
+					tempSession = getSession(target);
 					try {
 						result = tempSession.selectList(sqlmap, parameter);
 					} finally {
@@ -493,8 +2605,96 @@ public class MyBatisManagerImpl implements MyBatisManager {
 				} else {
 					result = tempSession.selectList(sqlmap, parameter);
 				}
-				return result;
-			}
+				return result;
+			}
+		}
+
+		/**
+		 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。
+		 * 
+		 * @param sqlmap
+		 *           需要调用的sqlmap名称
+		 * @param handler
+		 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+		 */
+		public void select(String sqlmap, ResultHandler handler) {
+			select(sqlmap, null, 0, handler);
+		}
+
+		/**
+		 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。
+		 * 
+		 * @param sqlmap
+		 *           需要调用的sqlmap名称
+		 * @param parameter
+		 *           需要传入的参数对象，与sqlmap中定义的类型相同
+		 * @param handler
+		 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+		 */
+		public void select(String sqlmap, Object parameter, ResultHandler handler) {
+			select(sqlmap, parameter, 0, handler);
+		}
+
+		/**
+		 * 用于从数据库逐条查询数据，查询结果不会在内存中汇总，适用于大量数据的导出。
+		 * 
+		 * @param sqlmap
+		 *           需要调用的sqlmap名称
+		 * @param parameter
+		 *           需要传入的参数对象，与sqlmap中定义的类型相同
+		 * @param fetchSize
+		 *           每次从数据库获取的行数，小于等于0时使用sqlmap中的设置
+		 * @param handler
+		 *           用于逐条处理查询结果的回调，可以通过{@link ResultContext#stop()}提前结束查询
+		 */
+		public void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler) {
+			statementInterceptor.setFetchSize(fetchSize);
+			try {
+				if (session != null) {
+					route(sqlmap, parameter);
+					// 保证能读到之前暂存的写操作的结果
+					flushStatements();
+					session.select(sqlmap, parameter, handler);
+				} else {
+					int target = route(sqlmap, parameter);
+					SqlSession tempSession = (target < 0) ? currentSharedSession() : null;
+					if (tempSession == null) {
+						tempSession = getSession(target);
+						try {
+							tempSession.select(sqlmap, parameter, handler);
+						} finally {
+							tempSession.close();
+						}
+					} else {
+						tempSession.select(sqlmap, parameter, handler);
+					}
+				}
+			} finally {
+				statementInterceptor.clearFetchSize();
+			}
+		}
+
+		/**
+		 * 用于以键集方式分页遍历查询结果，每页在事务中查询，参见{@link KeysetIterator}。
+		 * 
+		 * @param sqlmap
+		 *           接收{@link KeysetPage}作为参数的sqlmap名称
+		 * @param parameter
+		 *           查询参数，在sqlmap中为“parameter”
+		 * @param keyExtractor
+		 *           用于从记录中取出键
+		 * @param pageSize
+		 *           每页的最大条数
+		 * @return 在遍历时才查询的迭代器
+		 */
+		public <K, V> KeysetIterator<K, V> selectByKeyset(final String sqlmap, Object parameter,
+				KeyExtractor<K, V> keyExtractor, int pageSize) {
+			return new KeysetIterator<K, V>(parameter, keyExtractor, pageSize) {
+				@Override
+				List<V> selectPage(KeysetPage<K> keysetPage) {
+					return selectList(sqlmap, keysetPage);
+				}
+			};
 		}
 
 		/**
@@ -519,10 +2719,10 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public int insert(String sqlmap, Object parameter) {
 			int result;
-			if (session == null) {
-				session = getTranSession();
-			}
+			openSession(route(sqlmap, parameter));
 			result = session.insert(sqlmap, parameter);
+			afterWrite();
+			markDirty(sqlmap);
 			return result;
 		}
 
@@ -548,13 +2748,75 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public int update(String sqlmap, Object parameter) {
 			int result;
-			if (session == null) {
-				session = getTranSession();
-			}
+			openSession(route(sqlmap, parameter));
 			result = session.update(sqlmap, parameter);
+			afterWrite();
+			markDirty(sqlmap);
 			return result;
 		}
 
+		/**
+		 * 用于批量插入数据，修改在事务提交时一并生效。<br/>
+		 * 批量模式的事务中，参数按{@link #setBatchSize(int)}设置的大小分块以JDBC批量的方式发送，返回发送结果中被影响的总行数；
+		 * 其他模式的事务中逐条执行，但仍然只使用事务的Session。
+		 * 
+		 * @param sqlmap
+		 *           需要调用的sqlmap名称
+		 * @param parameters
+		 *           每个元素对应一次插入的参数对象
+		 * @return 返回被影响的总行数，驱动无法给出行数（{@link java.sql.Statement#SUCCESS_NO_INFO}）的语句不计入。
+		 */
+		public int insertAll(String sqlmap, Collection<?> parameters) {
+			return writeAll(sqlmap, parameters, true);
+		}
+
+		/**
+		 * 用于批量更新数据，修改在事务提交时一并生效。<br/>
+		 * 批量模式的事务中，参数按{@link #setBatchSize(int)}设置的大小分块以JDBC批量的方式发送，返回发送结果中被影响的总行数；
+		 * 其他模式的事务中逐条执行，但仍然只使用事务的Session。
+		 * 
+		 * @param sqlmap
+		 *           需要调用的sqlmap名称
+		 * @param parameters
+		 *           每个元素对应一次更新的参数对象
+		 * @return 返回被影响的总行数，驱动无法给出行数（{@link java.sql.Statement#SUCCESS_NO_INFO}）的语句不计入。
+		 */
+		public int updateAll(String sqlmap, Collection<?> parameters) {
+			return writeAll(sqlmap, parameters, false);
+		}
+
+		/**
+		 * 在事务的Session中执行批量写操作，批量模式下按batchSize分块发送。
+		 */
+		private int writeAll(String sqlmap, Collection<?> parameters, boolean insert) {
+			// 事先检查全部参数所在的分片，避免部分执行后才发现跨分片
+			for (Object parameter : parameters) {
+				openSession(route(sqlmap, parameter));
+			}
+			markDirty(sqlmap);
+			if (executorType != ExecutorType.BATCH) {
+				int result = 0;
+				for (Object parameter : parameters) {
+					result += insert ? session.insert(sqlmap, parameter) : session.update(sqlmap, parameter);
+				}
+				return result;
+			}
+			// 先发送此前暂存的语句，使返回的行数只包含本次操作
+			flushStatements();
+			int result = 0;
+			for (Object parameter : parameters) {
+				if (insert) {
+					session.insert(sqlmap, parameter);
+				} else {
+					session.update(sqlmap, parameter);
+				}
+				if (++pendingStatements >= batchSize) {
+					result += countUpdates(flushStatements());
+				}
+			}
+			return result + countUpdates(flushStatements());
+		}
+
 		/**
 		 * 用于删除数据，执行失败将抛出运行时异常。
 		 * 
@@ -577,10 +2839,10 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 */
 		public int delete(String sqlmap, Object parameter) {
 			int result;
-			if (session == null) {
-				session = getTranSession();
-			}
+			openSession(route(sqlmap, parameter));
 			result = session.delete(sqlmap, parameter);
+			afterWrite();
+			markDirty(sqlmap);
 			return result;
 		}
 
@@ -598,7 +2860,7 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 *           回调类型
 		 */
 		public void addCallback(Object callbackObj, String methodName, CallbackType type) {
-			List<Callback> callbackList = callbackMap.get(type);
+			List<TransactionCallback> callbackList = callbackMap.get(type);
 			try {
 				Callback callback = new Callback(callbackObj, methodName);
 				callbackList.add(callback);
@@ -623,7 +2885,7 @@ public class MyBatisManagerImpl implements MyBatisManager {
 		 *           回调类型
 		 */
 		public void addCallback(Class<?> callbackClass, String methodName, CallbackType type) {
-			List<Callback> callbackList = callbackMap.get(type);
+			List<TransactionCallback> callbackList = callbackMap.get(type);
 			try {
 				Callback callback = new Callback(callbackClass, methodName);
 				callbackList.add(callback);
@@ -634,29 +2896,96 @@ public class MyBatisManagerImpl implements MyBatisManager {
 			}
 		}
 
+		/**
+		 * 用于增加事务的各种回调函数。<br/>
+		 * 回调函数只对当前批次的数据有效，当数据被提交或回滚后，全部回调函数（无论是否被执行过）都将失效。<br/>
+		 * 可以绑定多个回调函数，将按照绑定的先后顺序调用。
+		 * 
+		 * @param callback
+		 *           回调函数
+		 * @param type
+		 *           回调类型
+		 */
+		public void addCallback(TransactionCallback callback, CallbackType type) {
+			if (callback == null) {
+				throw new IllegalArgumentException("callback不能为空！");
+			}
+			callbackMap.get(type).add(callback);
+		}
+
+		/**
+		 * 用于增加在异步线程中执行的回调函数，只支持{@link CallbackType#afterCommit}和{@link CallbackType#afterRollback}。<br/>
+		 * 异步回调在同步回调全部执行后提交到线程池（参见{@link MyBatisManagerImpl#setCallbackExecutor(Executor)}），
+		 * 同一事务的异步回调将按照绑定及提交、回滚的先后顺序逐个执行；线程池饱和时将在当前线程中直接执行。
+		 * 
+		 * @param callback
+		 *           回调函数
+		 * @param type
+		 *           回调类型
+		 */
+		public void addAsyncCallback(TransactionCallback callback, CallbackType type) {
+			if (callback == null) {
+				throw new IllegalArgumentException("callback不能为空！");
+			}
+			if (type != CallbackType.afterCommit && type != CallbackType.afterRollback) {
+				throw new IllegalArgumentException("只有afterCommit及afterRollback回调可以异步执行！");
+			}
+			asyncCallbackMap.get(type).add(callback);
+		}
+
 		private void invokeCallback(CallbackType type) {
-			List<Callback> callbackList = callbackMap.get(type);
-			for (Callback callback : callbackList) {
-				try {
-					callback.invoke();
-				} catch (Exception e) {
-					FrameLogger.error("回调函数调用失败！可能您调用了非静态方法，但未提供对象实例。", e);
+			List<TransactionCallback> callbackList = callbackMap.get(type);
+			for (TransactionCallback callback : callbackList) {
+				runCallback(callback);
+			}
+			List<TransactionCallback> asyncCallbackList = asyncCallbackMap.get(type);
+			if (!asyncCallbackList.isEmpty()) {
+				final List<TransactionCallback> callbacks = new ArrayList<TransactionCallback>(asyncCallbackList);
+				if (asyncCallbackQueue == null) {
+					asyncCallbackQueue = new SerialExecutor(callbackExecutor);
 				}
+				asyncCallbackQueue.execute(new Runnable() {
+					@Override
+					public void run() {
+						for (TransactionCallback callback : callbacks) {
+							runCallback(callback);
+						}
+					}
+				});
 			}
 			clearCallback(type);
 		}
 
+		private void runCallback(TransactionCallback callback) {
+			try {
+				callback.invoke();
+			} catch (Exception e) {
+				if (callback instanceof Callback) {
+					FrameLogger.error("回调函数调用失败！可能您调用了非静态方法，但未提供对象实例。", e);
+				} else {
+					FrameLogger.error("回调函数调用失败！", e);
+				}
+			}
+		}
+
 		private void clearCallback(CallbackType type) {
 			if (type != null) {
 				callbackMap.get(type).clear();
+				asyncCallbackMap.get(type).clear();
 			} else {
-				for (List<Callback> callbackList : callbackMap.values()) {
+				for (List<TransactionCallback> callbackList : callbackMap.values()) {
+					callbackList.clear();
+				}
+				for (List<TransactionCallback> callbackList : asyncCallbackMap.values()) {
 					callbackList.clear();
 				}
 			}
 		}
 
-		private class Callback {
+		/**
+		 * 按函数名称绑定的回调函数，通过反射调用。
+		 */
+		private class Callback implements TransactionCallback {
 			private final Object callbackObj;
 			private final Method method;
 
@@ -670,24 +2999,223 @@ public class MyBatisManagerImpl implements MyBatisManager {
 				method = callbackClass.getMethod(methodName);
 			}
 
+			@Override
 			public void invoke() throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
 				method.invoke(callbackObj);
 			}
 		}
+	}
 
-		@Override
-		protected void finalize() throws Throwable {
-			if (session != null) {
-				FrameLogger.error(this.toString() + ":检查到没有关闭连接的具名事务对象被销毁！请检查代码。");
-				session.close();
-				session = null;
+	/**
+	 * 加入外层事务的事务，全部操作都委托给外层事务，共用同一个连接，外层事务尚未打开连接时由操作打开。<br/>
+	 * 嵌套事务在第一次操作时设置保存点（外层事务尚未打开连接时，在连接打开后立即设置），回滚时只回滚到该保存点；
+	 * 非嵌套时回滚使外层事务只能回滚。<br/>
+	 * 回调函数注册到外层事务，只在最外层事务提交或回滚时触发。
+	 * 
+	 * @author Carl Tian
+	 */
+	private class JoinedTransaction implements Transaction {
+		private final DefaultTransaction outer;
+		private final boolean nested;
+		private Savepoint savepoint;
+		private boolean completed;
+
+		private JoinedTransaction(DefaultTransaction outer, boolean nested) {
+			this.outer = outer;
+			this.nested = nested;
+		}
+
+		/**
+		 * 每个操作之前调用，嵌套事务在第一次操作时设置保存点。
+		 */
+		private DefaultTransaction begin() {
+			if (!outer.bound) {
+				throw new IllegalStateException("外层事务已经结束！");
+			}
+			completed = false;
+			if (nested && savepoint == null) {
+				if (outer.session == null) {
+					if (!outer.pendingSavepoints.contains(this)) {
+						outer.pendingSavepoints.add(this);
+					}
+				} else {
+					setSavepoint();
+				}
+			}
+			return outer;
+		}
+
+		/**
+		 * 在外层事务的连接上设置保存点。
+		 */
+		private void setSavepoint() {
+			// 保存点之前暂存的语句属于外层事务，需要先行发送
+			outer.flushStatements();
+			try {
+				savepoint = outer.session.getConnection().setSavepoint();
+			} catch (SQLException e) {
+				FrameLogger.error("无法设置保存点！", e);
+				throw new RuntimeException("无法设置保存点！", e);
+			}
+		}
+
+		/**
+		 * 非嵌套时不产生实际效果，修改在最外层事务提交时生效；嵌套时释放保存点。<br/>
+		 * 外层事务已经结束时，修改已随外层事务提交或回滚，无法确定其结果，所以抛出异常。
+		 */
+		public void commit() {
+			if (!outer.bound) {
+				throw new IllegalStateException("外层事务已经结束！");
 			}
-			super.finalize();
+			if (savepoint != null && outer.session != null) {
+				outer.flushStatements();
+				try {
+					outer.session.getConnection().releaseSavepoint(savepoint);
+				} catch (SQLException e) {
+					// 部分数据库不支持释放保存点，保存点将在事务结束时自动释放
+					FrameLogger.warn("释放保存点失败：" + e.getMessage());
+				}
+			}
+			savepoint = null;
+			outer.pendingSavepoints.remove(this);
+			completed = true;
+		}
+
+		/**
+		 * 嵌套时回滚到保存点；非嵌套时使最外层事务只能回滚，其提交将改为回滚并抛出异常。
+		 */
+		public void rollback() {
+			if (!nested) {
+				outer.rollbackOnly = true;
+			} else if (savepoint != null && outer.session != null) {
+				// 保存点之后暂存的语句需要先发送再回滚，否则会在之后被发送
+				outer.flushStatements();
+				try {
+					outer.session.getConnection().rollback(savepoint);
+				} catch (SQLException e) {
+					FrameLogger.error("回滚到保存点失败！", e);
+					throw new RuntimeException("回滚到保存点失败！", e);
+				}
+				outer.session.clearCache();
+			}
+			savepoint = null;
+			outer.pendingSavepoints.remove(this);
+			completed = true;
+		}
+
+		/**
+		 * 没有提交过的修改将被回滚（参见{@link #rollback()}），连接由外层事务关闭。
+		 */
+		public void close() {
+			if (!completed) {
+				rollback();
+			}
+		}
+
+		public <T> T getMapper(Class<T> clazz) {
+			return begin().getMapper(clazz);
+		}
+
+		public <T> T selectOne(String sqlmap) {
+			return begin().selectOne(sqlmap);
+		}
+
+		public <T> T selectOne(String sqlmap, Object parameter) {
+			return begin().selectOne(sqlmap, parameter);
+		}
+
+		public <E> List<E> selectList(String sqlmap) {
+			return begin().selectList(sqlmap);
+		}
+
+		public <E> List<E> selectList(String sqlmap, Object parameter) {
+			return begin().selectList(sqlmap, parameter);
+		}
+
+		public void select(String sqlmap, ResultHandler handler) {
+			begin().select(sqlmap, handler);
+		}
+
+		public void select(String sqlmap, Object parameter, ResultHandler handler) {
+			begin().select(sqlmap, parameter, handler);
+		}
+
+		public void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler) {
+			begin().select(sqlmap, parameter, fetchSize, handler);
+		}
+
+		public <K, V> KeysetIterator<K, V> selectByKeyset(String sqlmap, Object parameter,
+				KeyExtractor<K, V> keyExtractor, int pageSize) {
+			return begin().selectByKeyset(sqlmap, parameter, keyExtractor, pageSize);
+		}
+
+		public int insert(String sqlmap) {
+			return begin().insert(sqlmap);
+		}
+
+		public int insert(String sqlmap, Object parameter) {
+			return begin().insert(sqlmap, parameter);
+		}
+
+		public int update(String sqlmap) {
+			return begin().update(sqlmap);
+		}
+
+		public int update(String sqlmap, Object parameter) {
+			return begin().update(sqlmap, parameter);
+		}
+
+		public int insertAll(String sqlmap, Collection<?> parameters) {
+			return begin().insertAll(sqlmap, parameters);
+		}
+
+		public int updateAll(String sqlmap, Collection<?> parameters) {
+			return begin().updateAll(sqlmap, parameters);
+		}
+
+		public int delete(String sqlmap) {
+			return begin().delete(sqlmap);
+		}
+
+		public int delete(String sqlmap, Object parameter) {
+			return begin().delete(sqlmap, parameter);
+		}
+
+		public void addCallback(Object callbackObj, String methodName, CallbackType type) {
+			outer.addCallback(callbackObj, methodName, type);
+		}
+
+		public void addCallback(Class<?> callbackClass, String methodName, CallbackType type) {
+			outer.addCallback(callbackClass, methodName, type);
+		}
+
+		public void addCallback(TransactionCallback callback, CallbackType type) {
+			outer.addCallback(callback, type);
+		}
+
+		public void addAsyncCallback(TransactionCallback callback, CallbackType type) {
+			outer.addAsyncCallback(callback, type);
+		}
+
+		public void setBatchSize(int batchSize) {
+			outer.setBatchSize(batchSize);
+		}
+
+		public List<BatchResult> flushStatements() {
+			return outer.flushStatements();
+		}
+
+		public List<BatchResult> getBatchResults() {
+			return outer.getBatchResults();
 		}
 	}
 
 	/**
-	 * 代理Mapper操作，实现每个动作都打开一个Session去完成。
+	 * 代理Mapper操作，实现每个动作都打开一个Session去完成。<br/>
+	 * 每个接口函数只在第一次调用时解析为{@link MapperMethod}并缓存，之后的调用直接在Session上执行对应的语句，
+	 * 不再为每次调用创建MyBatis的Mapper代理，也不再进行反射调用。<br/>
+	 * 查询操作在没有共享Session时使用只读库；配置了分片时，按转换后的参数确定分片，分片上的操作不使用共享Session及只读库。<br/>
+	 * 标注了{@link Cached}的查询优先使用缓存的结果，标注了{@link Evicts}的函数执行后使对应命名空间的缓存失效。
 	 * 
 	 * @author carl.tian
 	 * 
@@ -695,26 +3223,246 @@ public class MyBatisManagerImpl implements MyBatisManager {
 	private class MapperProxy implements InvocationHandler {
 
 		private final Class<?> mapperClass;
+		private final ConcurrentMap<Method, MapperInvoker> methodCache;
+		// 显式传递的共享Session，为null时使用当前线程的共享Session
+		private final SessionScope scope;
 
 		private MapperProxy(Class<?> mapperClass) {
+			this(mapperClass, null);
+		}
+
+		private MapperProxy(Class<?> mapperClass, SessionScope scope) {
 			this.mapperClass = mapperClass;
+			this.scope = scope;
+			methodCache = invokersOf(mapperClass);
+		}
+
+		private SqlSession sharedSession() {
+			if (scope == null) {
+				return currentSharedSession();
+			}
+			if (!scope.isOpen()) {
+				throw new IllegalStateException("共享Session已经关闭：" + mapperClass.getName());
+			}
+			return scope.getSession();
 		}
 
 		@Override
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-			SqlSession tempSession = sharedSession.get();
+			if (Object.class.equals(method.getDeclaringClass())) {
+				// toString、hashCode等函数由代理自身处理
+				return method.invoke(this, args);
+			}
+			MapperInvoker invoker = cachedInvoker(methodCache, mapperClass, method);
+			Object parameter = (shards.isEmpty() && invoker.cache == null) ? null : invoker.signature
+					.convertArgsToSqlCommandParam(args);
+			long generation = 0;
+			if (invoker.cache != null) {
+				Object cached = invoker.cache.get(invoker.cacheNamespace, invoker.statement, parameter);
+				if (cached != ResultCache.MISS) {
+					return copyResult(cached);
+				}
+				generation = invoker.cache.generation(invoker.cacheNamespace);
+			}
+			int shard = shards.isEmpty() ? -1 : resolveShard(invoker.statement, parameter);
+			SqlSession tempSession = (shard < 0) ? sharedSession() : null;
 			Object result;
-			if (tempSession == null) {
-				tempSession = getSession();
+			// 共享Session中的操作同样受隔离舱限制
+			long start = enterBulkhead(invoker.bulkhead);
+			boolean succeeded = false;
+			try {
+				if (tempSession == null) {
+					ReadReplica replica = (invoker.select && shard < 0) ? selectReplica() : null;
+					tempSession = (shard < 0) ? getReadSession(replica) : getSession(shard);
+					try {
+						result = invoker.mapperMethod.execute(tempSession, args);
+					} finally {
+						closeReadSession(replica, tempSession);
+					}
+				} else {
+					result = invoker.mapperMethod.execute(tempSession, args);
+				}
+				succeeded = true;
+			} finally {
+				exitBulkhead(invoker.bulkhead, start, succeeded);
+			}
+			if (resultCache != null && !invoker.select) {
+				resultCache.invalidate(mapperClass.getName());
+			}
+			if (invoker.cache != null) {
+				invoker.cache.put(invoker.statement, parameter, generation, copyResult(result));
+			}
+			if (invoker.evicts != null) {
+				mapperCaches.evict(invoker.evicts);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Mapper的异步版本，在异步线程中通过{@link MapperProxy}执行对应的Mapper函数，函数的对应关系在创建时确定。
+	 * 
+	 * @author Carl Tian
+	 */
+	private class AsyncMapperProxy implements InvocationHandler {
+
+		private final MapperProxy mapperProxy;
+		// 异步接口的函数到Mapper函数的对应关系
+		private final Map<Method, Method> methods = new HashMap<Method, Method>();
+
+		private AsyncMapperProxy(Class<?> asyncInterface, Class<?> mapperClass) {
+			mapperProxy = new MapperProxy(mapperClass);
+			for (Method method : asyncInterface.getMethods()) {
+				if (Object.class.equals(method.getDeclaringClass())) {
+					continue;
+				}
+				if (!Future.class.equals(method.getReturnType())) {
+					FrameLogger.error("异步接口的函数需要返回Future：" + method);
+					throw new RuntimeException("异步接口的函数需要返回Future：" + method);
+				}
 				try {
-					result = method.invoke(tempSession.getMapper(mapperClass), args);
-				} finally {
-					tempSession.close();
+					methods.put(method, mapperClass.getMethod(method.getName(), method.getParameterTypes()));
+				} catch (NoSuchMethodException e) {
+					FrameLogger.error("Mapper中没有与异步接口对应的函数：" + method, e);
+					throw new RuntimeException("Mapper中没有与异步接口对应的函数：" + method, e);
+				}
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+			if (Object.class.equals(method.getDeclaringClass())) {
+				// toString、hashCode等函数由代理自身处理
+				return method.invoke(this, args);
+			}
+			final Method target = methods.get(method);
+			return asyncExecutor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					try {
+						return mapperProxy.invoke(null, target, args);
+					} catch (Exception e) {
+						throw e;
+					} catch (Error e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new RuntimeException(t);
+					}
 				}
+			});
+		}
+	}
+
+	/**
+	 * 事务中的Mapper操作，与{@link MapperProxy}共用已解析的函数，在事务的Session上执行。<br/>
+	 * 不使用{@link com.carltian.frame.mybatis.annotation.Cached}的缓存，
+	 * {@link com.carltian.frame.mybatis.annotation.Evicts}在事务提交后才使缓存失效。
+	 * 
+	 * @author Carl Tian
+	 */
+	private class TransactionMapperProxy implements InvocationHandler {
+
+		private final Class<?> mapperClass;
+		private final ConcurrentMap<Method, MapperInvoker> methodCache;
+		private final DefaultTransaction transaction;
+
+		private TransactionMapperProxy(Class<?> mapperClass, DefaultTransaction transaction) {
+			this.mapperClass = mapperClass;
+			this.transaction = transaction;
+			methodCache = invokersOf(mapperClass);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (Object.class.equals(method.getDeclaringClass())) {
+				// toString、hashCode等函数由代理自身处理
+				return method.invoke(this, args);
+			}
+			MapperInvoker invoker = cachedInvoker(methodCache, mapperClass, method);
+			return transaction.execute(invoker, args);
+		}
+	}
+
+	/**
+	 * 用于获取Mapper已解析的函数，第一次使用该Mapper时创建。
+	 */
+	private ConcurrentMap<Method, MapperInvoker> invokersOf(Class<?> mapperClass) {
+		ConcurrentMap<Method, MapperInvoker> invokers = mapperInvokers.get(mapperClass);
+		if (invokers == null) {
+			invokers = new ConcurrentHashMap<Method, MapperInvoker>();
+			ConcurrentMap<Method, MapperInvoker> existing = mapperInvokers.putIfAbsent(mapperClass, invokers);
+			if (existing != null) {
+				invokers = existing;
+			}
+		}
+		return invokers;
+	}
+
+	private MapperInvoker cachedInvoker(ConcurrentMap<Method, MapperInvoker> methodCache, Class<?> mapperClass,
+			Method method) {
+		MapperInvoker invoker = methodCache.get(method);
+		if (invoker == null) {
+			invoker = new MapperInvoker(mapperClass, method);
+			MapperInvoker existing = methodCache.putIfAbsent(method, invoker);
+			if (existing != null) {
+				invoker = existing;
+			}
+		}
+		return invoker;
+	}
+
+	/**
+	 * 缓存的List结果在存入及取出时都复制一份，防止调用者修改缓存的结果；其他类型的结果是共享的。
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object copyResult(Object result) {
+		return (result instanceof List) ? new ArrayList((List) result) : result;
+	}
+
+	/**
+	 * Mapper接口函数解析后的结果。
+	 */
+	private class MapperInvoker {
+		private final MapperMethod mapperMethod;
+		private final boolean select;
+		// 用于确定分片及缓存的键
+		private final String statement;
+		private final MapperMethod.MethodSignature signature;
+		// 注解声明的缓存，没有时为null
+		private final ResultCache cache;
+		private final String cacheNamespace;
+		private final List<String> evicts;
+		// 所属的隔离舱，没有时为null
+		private final ConcurrencyLimiter bulkhead;
+
+		private MapperInvoker(Class<?> mapperClass, Method method) {
+			mapperMethod = new MapperMethod(mapperClass, method, sqlSessionFactory.getConfiguration());
+			MapperMethod.SqlCommand command = new MapperMethod.SqlCommand(sqlSessionFactory.getConfiguration(), mapperClass, method);
+			select = command.getType() == SqlCommandType.SELECT;
+			statement = command.getName();
+			signature = new MapperMethod.MethodSignature(sqlSessionFactory.getConfiguration(), method);
+			Cached cached = method.getAnnotation(Cached.class);
+			if (cached != null && (!select || signature.hasResultHandler() || signature.hasRowBounds())) {
+				// 分页及逐条处理的结果不能以参数作为键缓存
+				FrameLogger.warn("只有不带RowBounds及ResultHandler参数的查询才能被缓存，忽略@Cached：" + statement);
+				cached = null;
+			}
+			if (cached != null) {
+				cacheNamespace = "".equals(cached.namespace()) ? mapperClass.getName() : cached.namespace();
+				cache = mapperCaches.create(cacheNamespace, statement, cached.maxEntries(), cached.ttl() * 1000L);
 			} else {
-				result = method.invoke(tempSession.getMapper(mapperClass), args);
+				cacheNamespace = null;
+				cache = null;
 			}
-			return result;
+			Evicts evictsAnnotation = method.getAnnotation(Evicts.class);
+			if (evictsAnnotation == null) {
+				evicts = null;
+			} else if (evictsAnnotation.value().length == 0) {
+				evicts = Collections.singletonList(mapperClass.getName());
+			} else {
+				evicts = Arrays.asList(evictsAnnotation.value());
+			}
+			bulkhead = bulkheadOf(statement);
 		}
 	}
 }
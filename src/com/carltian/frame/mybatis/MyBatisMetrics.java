@@ -0,0 +1,235 @@
+package com.carltian.frame.mybatis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MyBatisManager的运行统计，包括各sqlmap的调用次数、失败次数及耗时分布，Session的打开、关闭次数及占用时间，
+ * 事务的提交、回滚次数及耗时，隔离舱的并发状态，以及只读库的初始化状态。<br/>
+ * 记录时不加锁，可以通过JMX查看。
+ * 
+ * @author Carl Tian
+ */
+public class MyBatisMetrics implements MyBatisMetricsMBean {
+
+	private final ConcurrentMap<String, LatencyStats> statements = new ConcurrentHashMap<String, LatencyStats>();
+	private final AtomicLong sessionOpenCount = new AtomicLong();
+	private final LatencyStats sessionHoldTime = new LatencyStats();
+	private final AtomicLong commitCount = new AtomicLong();
+	private final AtomicLong rollbackCount = new AtomicLong();
+	private final LatencyStats transactionTime = new LatencyStats();
+	private volatile Bulkheads bulkheads;
+	// 只读库的初始化状态，不随reset清零
+	private final AtomicInteger replicaPendingCount = new AtomicInteger();
+	private final AtomicInteger replicaFailedCount = new AtomicInteger();
+
+	/**
+	 * 记录一次语句的执行。
+	 * 
+	 * @param statement
+	 *           完整的sqlmap名称
+	 * @param nanos
+	 *           耗时（纳秒）
+	 * @param success
+	 *           是否执行成功
+	 */
+	void recordStatement(String statement, long nanos, boolean success) {
+		LatencyStats stats = statements.get(statement);
+		if (stats == null) {
+			stats = new LatencyStats();
+			LatencyStats existing = statements.putIfAbsent(statement, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		stats.record(nanos, success);
+	}
+
+	void setBulkheads(Bulkheads bulkheads) {
+		this.bulkheads = bulkheads;
+	}
+
+	/**
+	 * 记录一个开始在后台初始化的只读库。
+	 */
+	void recordReplicaPending() {
+		replicaPendingCount.incrementAndGet();
+	}
+
+	/**
+	 * 记录一个只读库初始化的结束。
+	 * 
+	 * @param success
+	 *           是否初始化成功，失败的只读库不会分担查询
+	 */
+	void recordReplicaDone(boolean success) {
+		replicaPendingCount.decrementAndGet();
+		if (!success) {
+			replicaFailedCount.incrementAndGet();
+		}
+	}
+
+	void recordSessionOpen() {
+		sessionOpenCount.incrementAndGet();
+	}
+
+	/**
+	 * 记录一次Session的关闭。
+	 * 
+	 * @param holdNanos
+	 *           Session从打开到关闭的时间（纳秒）
+	 */
+	void recordSessionClose(long holdNanos) {
+		sessionHoldTime.record(holdNanos, true);
+	}
+
+	void recordCommit(long nanos) {
+		commitCount.incrementAndGet();
+		transactionTime.record(nanos, true);
+	}
+
+	void recordRollback(long nanos) {
+		rollbackCount.incrementAndGet();
+		transactionTime.record(nanos, false);
+	}
+
+	@Override
+	public long getSessionOpenCount() {
+		return sessionOpenCount.get();
+	}
+
+	@Override
+	public long getSessionCloseCount() {
+		return sessionHoldTime.getCount();
+	}
+
+	@Override
+	public double getSessionHoldTimeAverage() {
+		return sessionHoldTime.getAverage();
+	}
+
+	@Override
+	public long getSessionHoldTimeMax() {
+		return sessionHoldTime.getMax();
+	}
+
+	@Override
+	public long getCommitCount() {
+		return commitCount.get();
+	}
+
+	@Override
+	public long getRollbackCount() {
+		return rollbackCount.get();
+	}
+
+	@Override
+	public double getTransactionTimeAverage() {
+		return transactionTime.getAverage();
+	}
+
+	@Override
+	public long getTransactionTimeMax() {
+		return transactionTime.getMax();
+	}
+
+	@Override
+	public String[] getStatementIds() {
+		List<String> ids = new ArrayList<String>(statements.keySet());
+		Collections.sort(ids);
+		return ids.toArray(new String[ids.size()]);
+	}
+
+	@Override
+	public String[] getStatementSummary() {
+		String[] ids = getStatementIds();
+		String[] summary = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			LatencyStats stats = statements.get(ids[i]);
+			summary[i] = String.format("%s calls=%d errors=%d avg=%.2fms p99<=%dms max=%dms", ids[i], stats.getCount(),
+					stats.getErrors(), stats.getAverage(), stats.getPercentile(0.99), stats.getMax());
+		}
+		return summary;
+	}
+
+	@Override
+	public String[] getBulkheadSummary() {
+		Bulkheads current = bulkheads;
+		return (current == null) ? new String[0] : current.getSummary();
+	}
+
+	/**
+	 * 获取仍在后台初始化的只读库数量（lazyInit时）。
+	 */
+	@Override
+	public int getReplicaPendingCount() {
+		return replicaPendingCount.get();
+	}
+
+	/**
+	 * 获取初始化失败的只读库数量，这些只读库不会分担查询。
+	 */
+	@Override
+	public int getReplicaFailedCount() {
+		return replicaFailedCount.get();
+	}
+
+	@Override
+	public long[] getHistogramBounds() {
+		return LatencyStats.BUCKET_BOUNDS.clone();
+	}
+
+	@Override
+	public long getCallCount(String statement) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? 0 : stats.getCount();
+	}
+
+	@Override
+	public long getErrorCount(String statement) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? 0 : stats.getErrors();
+	}
+
+	@Override
+	public double getAverageTime(String statement) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? 0 : stats.getAverage();
+	}
+
+	@Override
+	public long getMaxTime(String statement) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? 0 : stats.getMax();
+	}
+
+	@Override
+	public long getPercentile(String statement, double percentile) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? 0 : stats.getPercentile(percentile);
+	}
+
+	@Override
+	public long[] getHistogram(String statement) {
+		LatencyStats stats = statements.get(statement);
+		return (stats == null) ? new long[LatencyStats.BUCKET_BOUNDS.length + 1] : stats.getHistogram();
+	}
+
+	@Override
+	public void reset() {
+		for (Map.Entry<String, LatencyStats> entry : statements.entrySet()) {
+			entry.getValue().reset();
+		}
+		sessionOpenCount.set(0);
+		sessionHoldTime.reset();
+		commitCount.set(0);
+		rollbackCount.set(0);
+		transactionTime.reset();
+	}
+}
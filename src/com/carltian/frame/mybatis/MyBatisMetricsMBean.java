@@ -0,0 +1,52 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * {@link MyBatisMetrics}的JMX管理接口，时间单位均为毫秒。
+ * 
+ * @author Carl Tian
+ */
+public interface MyBatisMetricsMBean {
+
+	public abstract long getSessionOpenCount();
+
+	public abstract long getSessionCloseCount();
+
+	public abstract double getSessionHoldTimeAverage();
+
+	public abstract long getSessionHoldTimeMax();
+
+	public abstract long getCommitCount();
+
+	public abstract long getRollbackCount();
+
+	public abstract double getTransactionTimeAverage();
+
+	public abstract long getTransactionTimeMax();
+
+	public abstract String[] getStatementIds();
+
+	public abstract String[] getStatementSummary();
+
+	public abstract long[] getHistogramBounds();
+
+	public abstract String[] getBulkheadSummary();
+
+	public abstract int getReplicaPendingCount();
+
+	public abstract int getReplicaFailedCount();
+
+	public abstract long getCallCount(String statement);
+
+	public abstract long getErrorCount(String statement);
+
+	public abstract double getAverageTime(String statement);
+
+	public abstract long getMaxTime(String statement);
+
+	public abstract long getPercentile(String statement, double percentile);
+
+	public abstract long[] getHistogram(String statement);
+
+	public abstract void reset();
+
+}
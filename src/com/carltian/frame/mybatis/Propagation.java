@@ -0,0 +1,19 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 枚举类型，用于指定事务的传播方式，即当前线程已经处于事务中时，新的事务如何与其共处。
+ */
+public enum Propagation {
+	/**
+	 * 加入当前事务，共用同一个连接；没有当前事务时开启新事务。内层的提交不产生实际效果，内层的回滚使整个事务只能回滚。
+	 */
+	REQUIRED,
+	/**
+	 * 总是开启一个独立的新事务，使用新的连接。
+	 */
+	REQUIRES_NEW,
+	/**
+	 * 在当前事务中以保存点开启嵌套事务，共用同一个连接，内层的回滚只撤销保存点之后的修改；没有当前事务时开启新事务。
+	 */
+	NESTED
+}
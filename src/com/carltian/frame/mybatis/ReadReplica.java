@@ -0,0 +1,71 @@
+package com.carltian.frame.mybatis;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * 只读库，封装了只读库的SqlSessionFactory及其当前的并发查询数。
+ * 
+ * @author Carl Tian
+ */
+public class ReadReplica {
+
+	private final String name;
+	private final SqlSessionFactory sqlSessionFactory;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	ReadReplica(String name, SqlSessionFactory sqlSessionFactory) {
+		this.name = name;
+		this.sqlSessionFactory = sqlSessionFactory;
+	}
+
+	/**
+	 * 获取只读库的名称，即其配置文件的路径。
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 获取只读库当前正在执行的查询数量。
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	SqlSessionFactory getSqlSessionFactory() {
+		return sqlSessionFactory;
+	}
+
+	/**
+	 * 打开一个只读库的Session，使用后必须通过{@link #close(SqlSession)}关闭。
+	 */
+	SqlSession openSession() {
+		inFlight.incrementAndGet();
+		try {
+			return sqlSessionFactory.openSession(true);
+		} catch (RuntimeException e) {
+			inFlight.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * 关闭一个由{@link #openSession()}打开的Session。
+	 */
+	void close(SqlSession session) {
+		try {
+			session.close();
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
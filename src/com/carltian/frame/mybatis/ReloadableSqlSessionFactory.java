@@ -0,0 +1,373 @@
+package com.carltian.frame.mybatis;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+import com.carltian.frame.mybatis.pool.ConcurrentPooledDataSource;
+
+/**
+ * 可以在运行时替换的SqlSessionFactory，用于配置的热加载。<br/>
+ * 替换后新的Session从新的SqlSessionFactory打开，已经打开的Session（包括事务及共享Session）继续使用原来的SqlSessionFactory，
+ * 全部关闭后原来的连接池即被关闭。
+ * 
+ * @author Carl Tian
+ */
+class ReloadableSqlSessionFactory implements SqlSessionFactory {
+
+	private volatile Generation current;
+
+	ReloadableSqlSessionFactory(SqlSessionFactory factory) {
+		current = new Generation(factory);
+	}
+
+	/**
+	 * 替换为新的SqlSessionFactory，原来的SqlSessionFactory在其全部Session关闭后被关闭。
+	 */
+	synchronized void swap(SqlSessionFactory factory) {
+		Generation previous = current;
+		if (previous.closed) {
+			closeDataSource(factory);
+			throw new IllegalStateException("MyBatisManager已经关闭！");
+		}
+		current = new Generation(factory);
+		// 释放“当前”这一持有者
+		previous.release();
+	}
+
+	/**
+	 * 关闭：释放“当前”这一持有者，已经打开的Session全部关闭后连接池即被关闭，之后不能再打开Session。
+	 */
+	synchronized void close() {
+		Generation previous = current;
+		if (previous.closed) {
+			return;
+		}
+		previous.closed = true;
+		previous.release();
+	}
+
+	/**
+	 * 获取当前的SqlSessionFactory，并为即将打开的Session增加一个持有者。
+	 */
+	private Generation acquire() {
+		while (true) {
+			Generation generation = current;
+			if (generation.closed) {
+				throw new IllegalStateException("MyBatisManager已经关闭！");
+			}
+			if (generation.retain()) {
+				return generation;
+			}
+			// 读取后恰好被替换并关闭，重新读取
+		}
+	}
+
+	@Override
+	public Configuration getConfiguration() {
+		return current.factory.getConfiguration();
+	}
+
+	@Override
+	public SqlSession openSession() {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(boolean autoCommit) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(autoCommit), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(Connection connection) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(connection), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(TransactionIsolationLevel level) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(level), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(ExecutorType execType) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(execType), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(execType, autoCommit), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(execType, level), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public SqlSession openSession(ExecutorType execType, Connection connection) {
+		Generation generation = acquire();
+		try {
+			return new TrackedSqlSession(generation.factory.openSession(execType, connection), generation);
+		} catch (RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 关闭SqlSessionFactory的连接池，容器提供的数据源（如JNDI）不会被关闭。
+	 */
+	static void closeDataSource(SqlSessionFactory factory) {
+		DataSource dataSource = factory.getConfiguration().getEnvironment().getDataSource();
+		if (dataSource instanceof PooledDataSource) {
+			((PooledDataSource) dataSource).forceCloseAll();
+		} else if (dataSource instanceof ConcurrentPooledDataSource) {
+			((ConcurrentPooledDataSource) dataSource).close();
+		}
+	}
+
+	/**
+	 * 一个版本的SqlSessionFactory，由“当前”及其打开的各个Session共同持有，持有者全部释放时关闭连接池。
+	 */
+	private static class Generation {
+		private final SqlSessionFactory factory;
+		private final AtomicInteger references = new AtomicInteger(1);
+		// 由close()设置，之后不再被替换
+		private volatile boolean closed;
+
+		private Generation(SqlSessionFactory factory) {
+			this.factory = factory;
+		}
+
+		private boolean retain() {
+			while (true) {
+				int count = references.get();
+				if (count <= 0) {
+					return false;
+				}
+				if (references.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		private void release() {
+			if (references.decrementAndGet() == 0) {
+				closeDataSource(factory);
+			}
+		}
+	}
+
+	/**
+	 * 关闭时释放其所属版本的Session。
+	 */
+	private static class TrackedSqlSession implements SqlSession {
+		private final SqlSession session;
+		private final Generation generation;
+		private boolean closed;
+
+		private TrackedSqlSession(SqlSession session, Generation generation) {
+			this.session = session;
+			this.generation = generation;
+		}
+
+		@Override
+		public <T> T selectOne(String statement) {
+			return session.selectOne(statement);
+		}
+
+		@Override
+		public <T> T selectOne(String statement, Object parameter) {
+			return session.selectOne(statement, parameter);
+		}
+
+		@Override
+		public <E> List<E> selectList(String statement) {
+			return session.selectList(statement);
+		}
+
+		@Override
+		public <E> List<E> selectList(String statement, Object parameter) {
+			return session.selectList(statement, parameter);
+		}
+
+		@Override
+		public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+			return session.selectList(statement, parameter, rowBounds);
+		}
+
+		@Override
+		public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+			return session.selectMap(statement, mapKey);
+		}
+
+		@Override
+		public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+			return session.selectMap(statement, parameter, mapKey);
+		}
+
+		@Override
+		public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+			return session.selectMap(statement, parameter, mapKey, rowBounds);
+		}
+
+		@Override
+		public void select(String statement, Object parameter, ResultHandler handler) {
+			session.select(statement, parameter, handler);
+		}
+
+		@Override
+		public void select(String statement, ResultHandler handler) {
+			session.select(statement, handler);
+		}
+
+		@Override
+		public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+			session.select(statement, parameter, rowBounds, handler);
+		}
+
+		@Override
+		public int insert(String statement) {
+			return session.insert(statement);
+		}
+
+		@Override
+		public int insert(String statement, Object parameter) {
+			return session.insert(statement, parameter);
+		}
+
+		@Override
+		public int update(String statement) {
+			return session.update(statement);
+		}
+
+		@Override
+		public int update(String statement, Object parameter) {
+			return session.update(statement, parameter);
+		}
+
+		@Override
+		public int delete(String statement) {
+			return session.delete(statement);
+		}
+
+		@Override
+		public int delete(String statement, Object parameter) {
+			return session.delete(statement, parameter);
+		}
+
+		@Override
+		public void commit() {
+			session.commit();
+		}
+
+		@Override
+		public void commit(boolean force) {
+			session.commit(force);
+		}
+
+		@Override
+		public void rollback() {
+			session.rollback();
+		}
+
+		@Override
+		public void rollback(boolean force) {
+			session.rollback(force);
+		}
+
+		@Override
+		public List<BatchResult> flushStatements() {
+			return session.flushStatements();
+		}
+
+		@Override
+		public void clearCache() {
+			session.clearCache();
+		}
+
+		@Override
+		public Configuration getConfiguration() {
+			return session.getConfiguration();
+		}
+
+		@Override
+		public Connection getConnection() {
+			return session.getConnection();
+		}
+
+		@Override
+		public void close() {
+			try {
+				session.close();
+			} finally {
+				if (!closed) {
+					closed = true;
+					generation.release();
+				}
+			}
+		}
+
+		@Override
+		public <T> T getMapper(Class<T> type) {
+			// Mapper需要绑定到该Session上，关闭时才能正确计数
+			return session.getConfiguration().getMapper(type, this);
+		}
+	}
+
+}
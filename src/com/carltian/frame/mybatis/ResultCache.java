@@ -0,0 +1,176 @@
+package com.carltian.frame.mybatis;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果缓存，以sqlmap名称和参数作为键，按数量（LRU）和时间淘汰。<br/>
+ * 每个命名空间维护一个版本号，对命名空间的写操作只需递增版本号即可使其全部缓存失效，失效的缓存在下次访问时被清除。<br/>
+ * 缓存按键的散列值分为多个段，每段独立加锁并各自按LRU淘汰，不同段的访问互不阻塞，总条数不超过最大条数。<br/>
+ * 值得注意的是，作为键的参数对象需要正确实现equals和hashCode，并且在查询后不应再被修改；
+ * 缓存的结果对象被所有命中的调用者共享，调用者不应修改返回的结果对象。
+ * 
+ * @author Carl Tian
+ */
+class ResultCache {
+
+	/**
+	 * 缓存未命中时{@link #get(String, String, Object)}的返回值，用于区分缓存的null结果。
+	 */
+	static final Object MISS = new Object();
+
+	// 段的最大数量，每段至少容纳一条缓存
+	private static final int MAX_SEGMENTS = 16;
+
+	private final long ttlMillis;
+	private final Segment[] segments;
+	private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * @param maxEntries
+	 *           最大缓存条数
+	 * @param ttlMillis
+	 *           缓存的有效时间（毫秒），小于等于0时只按数量淘汰
+	 */
+	ResultCache(int maxEntries, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		int count = 1;
+		while (count < MAX_SEGMENTS && count * 2 <= maxEntries) {
+			count *= 2;
+		}
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			// 余数分给前面的段，使各段容量之和等于最大条数
+			segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+		}
+	}
+
+	/**
+	 * 获取命名空间的当前版本号，需要在查询数据库之前获取，并在{@link #put(String, Object, long, Object)}时传入。
+	 */
+	long generation(String namespace) {
+		return generationOf(namespace).get();
+	}
+
+	/**
+	 * 获取缓存的查询结果。
+	 * 
+	 * @return 缓存的结果（可能为null），没有有效的缓存时返回{@link #MISS}
+	 */
+	Object get(String namespace, String statement, Object parameter) {
+		StatementKey key = new StatementKey(statement, parameter);
+		long generation = generation(namespace);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			CacheEntry entry = segment.get(key);
+			if (entry == null) {
+				return MISS;
+			}
+			if (entry.generation != generation || (ttlMillis > 0 && System.currentTimeMillis() > entry.expireTime)) {
+				segment.remove(key);
+				return MISS;
+			}
+			return entry.value;
+		}
+	}
+
+	/**
+	 * 缓存查询结果。如果查询期间命名空间已经失效，则该结果在下次访问时即被视为失效。
+	 * 
+	 * @param generation
+	 *           查询之前通过{@link #generation(String)}获取的版本号
+	 */
+	void put(String statement, Object parameter, long generation, Object value) {
+		CacheEntry entry = new CacheEntry(value, generation, System.currentTimeMillis() + ttlMillis);
+		StatementKey key = new StatementKey(statement, parameter);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	/**
+	 * 使命名空间的全部缓存失效。
+	 */
+	void invalidate(String namespace) {
+		generationOf(namespace).incrementAndGet();
+	}
+
+	/**
+	 * 使多个命名空间的全部缓存失效。
+	 */
+	void invalidate(Collection<String> namespaces) {
+		for (String namespace : namespaces) {
+			invalidate(namespace);
+		}
+	}
+
+	/**
+	 * 清空全部缓存。
+	 */
+	void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		// 使清空前开始的查询在清空后放入的结果失效
+		for (AtomicLong generation : generations.values()) {
+			generation.incrementAndGet();
+		}
+	}
+
+	private Segment segmentFor(StatementKey key) {
+		int hash = key.hashCode();
+		// 混合高位，避免散列值低位相同的键集中在同一段
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	private AtomicLong generationOf(String namespace) {
+		AtomicLong generation = generations.get(namespace);
+		if (generation == null) {
+			generation = new AtomicLong();
+			AtomicLong existing = generations.putIfAbsent(namespace, generation);
+			if (existing != null) {
+				generation = existing;
+			}
+		}
+		return generation;
+	}
+
+	/**
+	 * 按访问顺序淘汰的一段缓存，访问时需要以段本身作为锁。
+	 */
+	private static class Segment extends LinkedHashMap<StatementKey, CacheEntry> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+
+		private Segment(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StatementKey, CacheEntry> eldest) {
+			return size() > maxEntries;
+		}
+	}
+
+	private static class CacheEntry {
+		private final Object value;
+		private final long generation;
+		private final long expireTime;
+
+		private CacheEntry(Object value, long generation, long expireTime) {
+			this.value = value;
+			this.generation = generation;
+			this.expireTime = expireTime;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.carltian.frame.mybatis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询策略，按顺序依次使用各个只读库。
+ * 
+ * @author Carl Tian
+ */
+public class RoundRobinPolicy implements LoadBalancePolicy {
+
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Override
+	public int select(List<ReadReplica> replicas) {
+		// 屏蔽符号位，防止计数溢出后得到负数下标
+		return (counter.getAndIncrement() & Integer.MAX_VALUE) % replicas.size();
+	}
+
+}
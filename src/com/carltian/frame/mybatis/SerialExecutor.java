@@ -0,0 +1,90 @@
+package com.carltian.frame.mybatis;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 串行执行器，将任务按提交的先后顺序逐个交给底层的线程池执行，保证同一执行器中的任务不会并发或乱序执行。<br/>
+ * 同一时刻只有一个排空任务队列的工作被交给线程池；底层线程池饱和（拒绝任务）时，由提交者在当前线程中排空队列，
+ * 以此向提交者施加背压。任务总是在不持有锁的情况下执行。
+ * 
+ * @author Carl Tian
+ */
+class SerialExecutor implements Executor {
+
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+	private final Executor executor;
+	// 是否已有排空队列的工作被交给线程池或正在执行
+	private boolean running;
+	private final Runnable drainer = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (this) {
+			tasks.offer(task);
+			if (running) {
+				return;
+			}
+			running = true;
+		}
+		schedule();
+	}
+
+	private void schedule() {
+		try {
+			executor.execute(drainer);
+		} catch (RejectedExecutionException e) {
+			drain();
+		}
+	}
+
+	/**
+	 * 依次执行队列中的任务直到队列为空。
+	 */
+	private void drain() {
+		boolean finished = false;
+		try {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						running = false;
+						finished = true;
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					FrameLogger.error("串行执行的任务失败！", e);
+				}
+			}
+		} finally {
+			if (!finished) {
+				// 任务抛出Error时交给新的排空工作继续执行剩余的任务
+				boolean remaining;
+				synchronized (this) {
+					remaining = !tasks.isEmpty();
+					running = remaining;
+				}
+				if (remaining) {
+					schedule();
+				}
+			}
+		}
+	}
+}
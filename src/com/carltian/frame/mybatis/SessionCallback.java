@@ -0,0 +1,12 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 在显式传递的共享Session中执行的回调函数，参见{@link MyBatisManager#runWithSharedSession(SessionCallback)}。
+ * 
+ * @author Carl Tian
+ */
+public interface SessionCallback<T> {
+
+	public abstract T call(SharedSession session) throws Exception;
+
+}
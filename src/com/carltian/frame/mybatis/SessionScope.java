@@ -0,0 +1,213 @@
+package com.carltian.frame.mybatis;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * 共享Session的作用域，由打开者及其传播到的子任务共同持有，最后一个持有者释放时关闭Session。<br/>
+ * 子任务可能与打开者并发执行，所以对Session的操作是同步的。
+ * 
+ * @author Carl Tian
+ */
+class SessionScope {
+
+	private final SqlSession session;
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	SessionScope(SqlSession session) {
+		this.session = new SynchronizedSqlSession(session);
+	}
+
+	SqlSession getSession() {
+		return session;
+	}
+
+	/**
+	 * 判断Session是否仍未关闭。
+	 */
+	boolean isOpen() {
+		return references.get() > 0;
+	}
+
+	/**
+	 * 增加一个持有者。
+	 * 
+	 * @return 作用域已经关闭时返回false
+	 */
+	boolean retain() {
+		while (true) {
+			int count = references.get();
+			if (count <= 0) {
+				return false;
+			}
+			if (references.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 释放一个持有者，最后一个持有者释放时关闭Session。
+	 */
+	void release() {
+		if (references.decrementAndGet() == 0) {
+			session.close();
+		}
+	}
+
+	/**
+	 * 以同步方式委托全部操作的Session。逐条查询时，回调执行期间其他持有者需要等待。
+	 */
+	private static class SynchronizedSqlSession implements SqlSession {
+		private final SqlSession session;
+
+		private SynchronizedSqlSession(SqlSession session) {
+			this.session = session;
+		}
+
+		@Override
+		public synchronized <T> T selectOne(String statement) {
+			return session.selectOne(statement);
+		}
+
+		@Override
+		public synchronized <T> T selectOne(String statement, Object parameter) {
+			return session.selectOne(statement, parameter);
+		}
+
+		@Override
+		public synchronized <E> List<E> selectList(String statement) {
+			return session.selectList(statement);
+		}
+
+		@Override
+		public synchronized <E> List<E> selectList(String statement, Object parameter) {
+			return session.selectList(statement, parameter);
+		}
+
+		@Override
+		public synchronized <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+			return session.selectList(statement, parameter, rowBounds);
+		}
+
+		@Override
+		public synchronized <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+			return session.selectMap(statement, mapKey);
+		}
+
+		@Override
+		public synchronized <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+			return session.selectMap(statement, parameter, mapKey);
+		}
+
+		@Override
+		public synchronized <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+			return session.selectMap(statement, parameter, mapKey, rowBounds);
+		}
+
+		@Override
+		public synchronized void select(String statement, Object parameter, ResultHandler handler) {
+			session.select(statement, parameter, handler);
+		}
+
+		@Override
+		public synchronized void select(String statement, ResultHandler handler) {
+			session.select(statement, handler);
+		}
+
+		@Override
+		public synchronized void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+			session.select(statement, parameter, rowBounds, handler);
+		}
+
+		@Override
+		public synchronized int insert(String statement) {
+			return session.insert(statement);
+		}
+
+		@Override
+		public synchronized int insert(String statement, Object parameter) {
+			return session.insert(statement, parameter);
+		}
+
+		@Override
+		public synchronized int update(String statement) {
+			return session.update(statement);
+		}
+
+		@Override
+		public synchronized int update(String statement, Object parameter) {
+			return session.update(statement, parameter);
+		}
+
+		@Override
+		public synchronized int delete(String statement) {
+			return session.delete(statement);
+		}
+
+		@Override
+		public synchronized int delete(String statement, Object parameter) {
+			return session.delete(statement, parameter);
+		}
+
+		@Override
+		public synchronized void commit() {
+			session.commit();
+		}
+
+		@Override
+		public synchronized void commit(boolean force) {
+			session.commit(force);
+		}
+
+		@Override
+		public synchronized void rollback() {
+			session.rollback();
+		}
+
+		@Override
+		public synchronized void rollback(boolean force) {
+			session.rollback(force);
+		}
+
+		@Override
+		public synchronized List<BatchResult> flushStatements() {
+			return session.flushStatements();
+		}
+
+		@Override
+		public synchronized void close() {
+			session.close();
+		}
+
+		@Override
+		public synchronized void clearCache() {
+			session.clearCache();
+		}
+
+		@Override
+		public synchronized Configuration getConfiguration() {
+			return session.getConfiguration();
+		}
+
+		@Override
+		public synchronized Connection getConnection() {
+			return session.getConnection();
+		}
+
+		@Override
+		public <T> T getMapper(Class<T> type) {
+			// Mapper需要绑定到同步的Session上
+			return session.getConfiguration().getMapper(type, this);
+		}
+	}
+
+}
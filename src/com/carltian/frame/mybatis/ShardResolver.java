@@ -0,0 +1,35 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 分片策略，用于确定操作应当在哪个分片上执行。<br/>
+ * 实现类必须线程安全，并提供一个公有的无参构造函数。
+ * 
+ * @author Carl Tian
+ */
+public interface ShardResolver {
+
+	/**
+	 * 根据sqlmap名称及参数确定分片。
+	 * 
+	 * @param sqlmap
+	 *           sqlmap名称，通过Mapper调用时为完整的sqlmap名称
+	 * @param parameter
+	 *           参数对象，通过Mapper调用时为MyBatis转换后的参数
+	 * @param shardCount
+	 *           分片的数量
+	 * @return 分片的下标，负数表示该操作不分片，使用主库（事务中表示使用事务已绑定的数据库）
+	 */
+	public abstract int getShard(String sqlmap, Object parameter, int shardCount);
+
+	/**
+	 * 根据显式指定的分片键确定分片，用于开启绑定到某个分片的事务。
+	 * 
+	 * @param shardKey
+	 *           分片键，例如租户的ID
+	 * @param shardCount
+	 *           分片的数量
+	 * @return 分片的下标，负数表示使用主库
+	 */
+	public abstract int getShardByKey(Object shardKey, int shardCount);
+
+}
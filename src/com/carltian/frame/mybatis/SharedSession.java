@@ -0,0 +1,43 @@
+package com.carltian.frame.mybatis;
+
+import java.util.List;
+
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * 显式传递的共享Session，由{@link MyBatisManager#runWithSharedSession(SessionCallback)}创建并交给回调函数。<br/>
+ * 通过它执行的操作及获取的Mapper总是使用该Session，与执行的线程无关，可以直接交给子任务或其他线程（包括虚拟线程）使用；
+ * 各操作与{@link MyBatisManager}中的同名函数相同（查询结果缓存、分片、隔离舱同样适用），只是不使用线程的共享Session。<br/>
+ * 回调函数返回后Session即被关闭，之后再使用将抛出{@link IllegalStateException}。
+ * 
+ * @author Carl Tian
+ */
+public interface SharedSession {
+
+	public abstract <T> T getMapper(Class<T> clazz);
+
+	public abstract <T> T selectOne(String sqlmap);
+
+	public abstract <T> T selectOne(String sqlmap, Object parameter);
+
+	public abstract <E> List<E> selectList(String sqlmap);
+
+	public abstract <E> List<E> selectList(String sqlmap, Object parameter);
+
+	public abstract void select(String sqlmap, Object parameter, ResultHandler handler);
+
+	public abstract void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler);
+
+	public abstract int insert(String sqlmap);
+
+	public abstract int insert(String sqlmap, Object parameter);
+
+	public abstract int update(String sqlmap);
+
+	public abstract int update(String sqlmap, Object parameter);
+
+	public abstract int delete(String sqlmap);
+
+	public abstract int delete(String sqlmap, Object parameter);
+
+}
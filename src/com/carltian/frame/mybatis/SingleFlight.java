@@ -0,0 +1,94 @@
+package com.carltian.frame.mybatis;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 合并相同的并发查询：同一时刻，sqlmap名称及参数都相同的查询只会有一个真正访问数据库，其余的等待并共享其结果。<br/>
+ * 只对配置了的sqlmap生效，配置的名称可以以“*”结尾表示前缀匹配。
+ * 
+ * @author Carl Tian
+ */
+class SingleFlight {
+
+	private final Set<String> statements = new HashSet<String>();
+	private final Set<String> prefixes = new HashSet<String>();
+	private final ConcurrentMap<String, Boolean> enabled = new ConcurrentHashMap<String, Boolean>();
+	private final ConcurrentMap<StatementKey, FutureTask<Object>> calls = new ConcurrentHashMap<StatementKey, FutureTask<Object>>();
+
+	/**
+	 * @param patterns
+	 *           需要合并的sqlmap名称，以逗号分隔
+	 */
+	SingleFlight(String patterns) {
+		for (String pattern : patterns.split(",")) {
+			pattern = pattern.trim();
+			if (pattern.endsWith("*")) {
+				prefixes.add(pattern.substring(0, pattern.length() - 1));
+			} else if (pattern.length() > 0) {
+				statements.add(pattern);
+			}
+		}
+	}
+
+	/**
+	 * 判断sqlmap是否需要合并，判断结果会被缓存。
+	 */
+	boolean isEnabled(String statement) {
+		Boolean result = enabled.get(statement);
+		if (result == null) {
+			result = statements.contains(statement);
+			for (String prefix : prefixes) {
+				result = result || statement.startsWith(prefix);
+			}
+			enabled.put(statement, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 执行查询，如果已有相同的查询正在执行则等待其结果。
+	 * 
+	 * @param statement
+	 *           sqlmap名称
+	 * @param parameter
+	 *           查询参数，需要正确实现equals和hashCode
+	 * @param query
+	 *           实际执行的查询
+	 * @return 查询结果，同一时刻的相同查询得到的是同一个对象
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String statement, Object parameter, Callable<T> query) {
+		StatementKey key = new StatementKey(statement, parameter);
+		FutureTask<Object> call = new FutureTask<Object>((Callable<Object>) query);
+		FutureTask<Object> existing = calls.putIfAbsent(key, call);
+		if (existing == null) {
+			try {
+				call.run();
+			} finally {
+				calls.remove(key, call);
+			}
+		} else {
+			call = existing;
+		}
+		try {
+			return (T) call.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("等待相同的查询时被中断！", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.carltian.frame.mybatis;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 慢语句日志，记录执行时间超过阈值的语句的名称、SQL、参数摘要及耗时。<br/>
+ * 为防止大量慢语句同时出现时日志泛滥，按慢语句的出现频率自适应地抽样：频率不超过每秒的日志条数时全部输出，
+ * 超过时按比例抽样，使日志分散在整段时间内而不是集中在每秒的开头；越慢的语句被抽中的概率越大（与耗时超过阈值的倍数成正比）。
+ * 此外每秒输出的条数仍有硬性上限。未输出的只计数，并在下一条输出的日志中报告被省略的数量。
+ * 
+ * @author Carl Tian
+ */
+class SlowStatementLog {
+
+	private static final int MAX_PARAMETER_LENGTH = 200;
+
+	private final long thresholdNanos;
+	private final int maxLogsPerSecond;
+	private final AtomicLong windowStart = new AtomicLong();
+	private final AtomicInteger logsInWindow = new AtomicInteger();
+	// 当前窗口内出现的慢语句数量，用于估计慢语句的频率
+	private final AtomicInteger slowInWindow = new AtomicInteger();
+	private final AtomicLong suppressed = new AtomicLong();
+	// 平滑后的慢语句频率（条/秒）
+	private volatile double slowRate;
+
+	/**
+	 * @param thresholdMillis
+	 *           慢语句的阈值（毫秒）
+	 * @param maxLogsPerSecond
+	 *           每秒输出的日志条数，既是抽样的目标也是硬性上限
+	 */
+	SlowStatementLog(long thresholdMillis, int maxLogsPerSecond) {
+		this.thresholdNanos = thresholdMillis * 1000000L;
+		this.maxLogsPerSecond = maxLogsPerSecond;
+	}
+
+	/**
+	 * 记录一次语句的执行，耗时未超过阈值时直接返回。
+	 */
+	void record(MappedStatement ms, Object parameter, long nanos) {
+		if (nanos < thresholdNanos || !acquire(nanos)) {
+			return;
+		}
+		StringBuilder message = new StringBuilder("慢语句：").append(ms.getId()).append("，耗时")
+				.append(nanos / 1000000L).append("毫秒");
+		long skipped = suppressed.getAndSet(0);
+		if (skipped > 0) {
+			message.append("（此前另有").append(skipped).append("条慢语句日志被省略）");
+		}
+		message.append("\nSQL：").append(boundSql(ms, parameter));
+		message.append("\n参数：").append(summarize(parameter));
+		FrameLogger.warn(message.toString());
+	}
+
+	/**
+	 * 判断是否输出本条慢语句的日志，不输出时增加被省略的数量。
+	 */
+	private boolean acquire(long nanos) {
+		long now = System.currentTimeMillis();
+		long start = windowStart.get();
+		if (now - start >= 1000 && windowStart.compareAndSet(start, now)) {
+			int count = slowInWindow.getAndSet(0);
+			// 第一个窗口没有起始时间，不参与估计
+			if (start > 0) {
+				double observed = count * 1000.0 / (now - start);
+				slowRate = slowRate * 0.5 + observed * 0.5;
+			}
+			logsInWindow.set(0);
+		}
+		slowInWindow.incrementAndGet();
+		double rate = slowRate;
+		if (rate > maxLogsPerSecond) {
+			double probability = maxLogsPerSecond / rate * ((double) nanos / thresholdNanos);
+			if (probability < 1 && ThreadLocalRandom.current().nextDouble() >= probability) {
+				suppressed.incrementAndGet();
+				return false;
+			}
+		}
+		if (logsInWindow.incrementAndGet() <= maxLogsPerSecond) {
+			return true;
+		}
+		suppressed.incrementAndGet();
+		return false;
+	}
+
+	private static String boundSql(MappedStatement ms, Object parameter) {
+		try {
+			return ms.getBoundSql(parameter).getSql().replaceAll("\\s+", " ").trim();
+		} catch (RuntimeException e) {
+			return "（无法获取SQL：" + e.getMessage() + "）";
+		}
+	}
+
+	private static String summarize(Object parameter) {
+		String value;
+		try {
+			value = String.valueOf(parameter);
+		} catch (RuntimeException e) {
+			value = parameter.getClass().getName();
+		}
+		if (value.length() > MAX_PARAMETER_LENGTH) {
+			value = value.substring(0, MAX_PARAMETER_LENGTH) + "...";
+		}
+		return value;
+	}
+}
@@ -0,0 +1,118 @@
+package com.carltian.frame.mybatis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.ReuseExecutor;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * MyBatis插件，用于限制{@link ReuseExecutor}缓存的JDBC语句数量，防止长期使用的Session无限制地持有语句。<br/>
+ * 在执行器创建时将其语句缓存替换为LRU缓存，超出数量时关闭最久未使用的语句；不代理执行器，执行时没有额外开销。
+ * 无法替换语句缓存时（执行器被未知的代理包装或MyBatis版本不兼容）抛出异常。<br/>
+ * 注意：嵌套查询执行期间外层语句仍在使用，缓存数量需要大于单次查询中不同嵌套语句的数量。
+ * 
+ * @author Carl Tian
+ */
+class StatementCacheInterceptor implements Interceptor {
+
+	private final int maxStatements;
+
+	/**
+	 * @param maxStatements
+	 *           每个Session最多缓存的语句数量，小于等于0时不限制
+	 */
+	StatementCacheInterceptor(int maxStatements) {
+		this.maxStatements = maxStatements;
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		return invocation.proceed();
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		if (maxStatements <= 0) {
+			return target;
+		}
+		Object executor = unwrap(target);
+		if (executor instanceof ReuseExecutor) {
+			MetaObject metaObject = SystemMetaObject.forObject(executor);
+			if (!metaObject.hasSetter("statementMap")) {
+				// MyBatis版本不同时字段可能不存在，不能静默地放弃限制
+				FrameLogger.error("ReuseExecutor中没有statementMap字段，无法限制缓存的语句数量，请检查MyBatis的版本！");
+				throw new RuntimeException("ReuseExecutor中没有statementMap字段，无法限制缓存的语句数量！");
+			}
+			metaObject.setValue("statementMap", new LruStatementMap(maxStatements));
+		}
+		return target;
+	}
+
+	/**
+	 * 去掉执行器外层的插件代理及{@link CachingExecutor}，返回实际执行语句的执行器。<br/>
+	 * 配置文件中声明的插件先于本插件执行，执行器可能已经被其代理；遇到无法识别的代理时抛出异常，而不是静默地不做处理。
+	 */
+	private static Object unwrap(Object executor) {
+		while (true) {
+			if (Proxy.isProxyClass(executor.getClass())) {
+				InvocationHandler handler = Proxy.getInvocationHandler(executor);
+				if (!(handler instanceof Plugin)) {
+					FrameLogger.error("执行器被无法识别的代理包装，无法限制缓存的语句数量：" + handler.getClass().getName());
+					throw new RuntimeException("执行器被无法识别的代理包装，无法限制缓存的语句数量："
+							+ handler.getClass().getName());
+				}
+				executor = SystemMetaObject.forObject(handler).getValue("target");
+			} else if (executor instanceof CachingExecutor) {
+				// 开启了二级缓存时，执行器被CachingExecutor包装
+				executor = SystemMetaObject.forObject(executor).getValue("delegate");
+			} else {
+				return executor;
+			}
+		}
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+
+	/**
+	 * 按访问顺序淘汰的语句缓存，被淘汰的语句会被立即关闭。
+	 */
+	private static class LruStatementMap extends LinkedHashMap<String, Statement> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxStatements;
+
+		private LruStatementMap(int maxStatements) {
+			super(16, 0.75f, true);
+			this.maxStatements = maxStatements;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+			if (size() <= maxStatements) {
+				return false;
+			}
+			try {
+				eldest.getValue().close();
+			} catch (SQLException e) {
+				FrameLogger.error("关闭被淘汰的语句失败！", e);
+			}
+			return true;
+		}
+	}
+
+}
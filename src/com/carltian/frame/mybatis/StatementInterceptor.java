@@ -0,0 +1,72 @@
+package com.carltian.frame.mybatis;
+
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * MyBatis插件，用于将当前线程指定的设置（如fetchSize）应用到即将执行的JDBC语句上。<br/>
+ * 只有当前线程设置了需要应用的参数时才会代理StatementHandler，其余情况下不产生任何额外开销。<br/>
+ * 设置在每次执行查询时应用，执行后恢复语句原来的设置：使用{@link org.apache.ibatis.session.ExecutorType#REUSE}时，
+ * 语句只在第一次执行时预编译，之后的执行会复用同一个JDBC语句，所以不能只在预编译时设置。
+ * 
+ * @author Carl Tian
+ */
+@Intercepts({ @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }) })
+class StatementInterceptor implements Interceptor {
+
+	private final ThreadLocal<Integer> fetchSize = new ThreadLocal<Integer>();
+
+	/**
+	 * 设置当前线程之后执行的语句的fetchSize，使用后必须通过{@link #clearFetchSize()}清除。
+	 * 
+	 * @param size
+	 *           每次从数据库获取的行数，小于等于0时使用语句本身的设置
+	 */
+	void setFetchSize(int size) {
+		if (size > 0) {
+			fetchSize.set(size);
+		}
+	}
+
+	void clearFetchSize() {
+		fetchSize.remove();
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		Integer size = fetchSize.get();
+		if (size == null) {
+			return invocation.proceed();
+		}
+		Statement statement = (Statement) invocation.getArgs()[0];
+		int previous = statement.getFetchSize();
+		statement.setFetchSize(size);
+		try {
+			// 结果在query返回前已全部交给ResultHandler处理
+			return invocation.proceed();
+		} finally {
+			statement.setFetchSize(previous);
+		}
+	}
+
+	@Override
+	public Object plugin(Object target) {
+		if (target instanceof StatementHandler && fetchSize.get() != null) {
+			return Plugin.wrap(target, this);
+		}
+		return target;
+	}
+
+	@Override
+	public void setProperties(Properties properties) {
+	}
+
+}
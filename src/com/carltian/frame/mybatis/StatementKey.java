@@ -0,0 +1,36 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 以sqlmap名称和参数作为键，用于识别相同的查询。参数对象需要正确实现equals和hashCode。
+ * 
+ * @author Carl Tian
+ */
+class StatementKey {
+	private final String statement;
+	private final Object parameter;
+	private final int hash;
+
+	StatementKey(String statement, Object parameter) {
+		this.statement = statement;
+		this.parameter = parameter;
+		hash = 31 * statement.hashCode() + (parameter == null ? 0 : parameter.hashCode());
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StatementKey)) {
+			return false;
+		}
+		StatementKey other = (StatementKey) obj;
+		return statement.equals(other.statement)
+				&& (parameter == null ? other.parameter == null : parameter.equals(other.parameter));
+	}
+}
@@ -1,5 +1,66 @@
 package com.carltian.frame.mybatis;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ResultHandler;
+
 public interface Transaction {
-	// FIXME 补充接口
+
+	public abstract void commit();
+
+	public abstract void rollback();
+
+	public abstract void close();
+
+	public abstract <T> T getMapper(Class<T> clazz);
+
+	public abstract <T> T selectOne(String sqlmap);
+
+	public abstract <T> T selectOne(String sqlmap, Object parameter);
+
+	public abstract <E> List<E> selectList(String sqlmap);
+
+	public abstract <E> List<E> selectList(String sqlmap, Object parameter);
+
+	public abstract void select(String sqlmap, ResultHandler handler);
+
+	public abstract void select(String sqlmap, Object parameter, ResultHandler handler);
+
+	public abstract void select(String sqlmap, Object parameter, int fetchSize, ResultHandler handler);
+
+	public abstract <K, V> KeysetIterator<K, V> selectByKeyset(String sqlmap, Object parameter, KeyExtractor<K, V> keyExtractor,
+			int pageSize);
+
+	public abstract int insert(String sqlmap);
+
+	public abstract int insert(String sqlmap, Object parameter);
+
+	public abstract int update(String sqlmap);
+
+	public abstract int update(String sqlmap, Object parameter);
+
+	public abstract int insertAll(String sqlmap, Collection<?> parameters);
+
+	public abstract int updateAll(String sqlmap, Collection<?> parameters);
+
+	public abstract int delete(String sqlmap);
+
+	public abstract int delete(String sqlmap, Object parameter);
+
+	public abstract void addCallback(Object callbackObj, String methodName, CallbackType type);
+
+	public abstract void addCallback(Class<?> callbackClass, String methodName, CallbackType type);
+
+	public abstract void addCallback(TransactionCallback callback, CallbackType type);
+
+	public abstract void addAsyncCallback(TransactionCallback callback, CallbackType type);
+
+	public abstract void setBatchSize(int batchSize);
+
+	public abstract List<BatchResult> flushStatements();
+
+	public abstract List<BatchResult> getBatchResults();
+
 }
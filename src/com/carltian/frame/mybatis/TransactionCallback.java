@@ -0,0 +1,14 @@
+package com.carltian.frame.mybatis;
+
+/**
+ * 事务的回调函数，通过{@link Transaction#addCallback(TransactionCallback, CallbackType)}或
+ * {@link Transaction#addAsyncCallback(TransactionCallback, CallbackType)}绑定到事务上。<br/>
+ * 与按函数名称绑定的回调不同，调用时不需要反射。
+ * 
+ * @author Carl Tian
+ */
+public interface TransactionCallback {
+
+	public abstract void invoke() throws Exception;
+
+}
@@ -0,0 +1,304 @@
+package com.carltian.frame.mybatis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 延迟写入队列，用于不需要等待结果的插入（如审计、日志记录）。调用者只需将记录放入有界队列，由后台线程批量写入：
+ * 每凑满batchSize条或距第一条记录超过interval毫秒时，将队列中的记录按sqlmap分组，每组以一次JDBC批量执行并提交。<br/>
+ * 同一个sqlmap的记录按放入的顺序写入；批量写入失败时逐条重试，仍然失败的记录被丢弃并记录到日志中。
+ * 
+ * @author Carl Tian
+ */
+abstract class WriteBehindQueue {
+
+	/**
+	 * 队列已满时的处理方式。
+	 */
+	enum OverflowPolicy {
+		/**
+		 * 等待队列中有空位。
+		 */
+		BLOCK,
+		/**
+		 * 丢弃该记录。
+		 */
+		DISCARD,
+		/**
+		 * 在调用者的线程中直接写入，此时不保证与队列中的记录的顺序。
+		 */
+		CALLER_RUNS,
+		/**
+		 * 抛出{@link RejectedExecutionException}。
+		 */
+		REJECT
+	}
+
+	private final BlockingQueue<Entry> queue;
+	private final int batchSize;
+	private final long intervalMillis;
+	private final OverflowPolicy overflowPolicy;
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+	// 已处理（写入或丢弃）的记录数，由写入线程更新
+	private long completed;
+	private volatile boolean closed;
+	private Thread writer;
+	private Thread shutdownHook;
+
+	/**
+	 * @param capacity
+	 *           队列的容量
+	 * @param batchSize
+	 *           每次写入的最大记录数
+	 * @param intervalMillis
+	 *           第一条记录放入后最多等待的时间（毫秒）
+	 * @param overflowPolicy
+	 *           队列已满时的处理方式
+	 */
+	WriteBehindQueue(int capacity, int batchSize, long intervalMillis, OverflowPolicy overflowPolicy) {
+		if (capacity <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("延迟写入队列的容量及批量大小必须大于0！");
+		}
+		queue = new LinkedBlockingQueue<Entry>(capacity);
+		this.batchSize = batchSize;
+		this.intervalMillis = intervalMillis;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * 在一个事务中批量写入同一分区的一组记录，失败时需要全部回滚。
+	 * 
+	 * @param partition
+	 *           放入时确定的分区（分片）
+	 */
+	abstract void writeBatch(int partition, String sqlmap, List<Object> parameters);
+
+	/**
+	 * 写入一条记录，用于批量写入失败后的逐条重试及{@link OverflowPolicy#CALLER_RUNS}。
+	 */
+	abstract void writeOne(int partition, String sqlmap, Object parameter);
+
+	/**
+	 * 放入一条记录，第一次调用时启动写入线程。
+	 * 
+	 * @param partition
+	 *           记录所属的分区，不同分区的记录不会在同一个事务中写入
+	 */
+	void offer(int partition, String sqlmap, Object parameter) {
+		startWriter();
+		Entry entry = new Entry(partition, sqlmap, parameter);
+		accepted.incrementAndGet();
+		if (queue.offer(entry)) {
+			return;
+		}
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				queue.put(entry);
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				complete(1);
+				throw new RejectedExecutionException("等待延迟写入队列时被中断！", e);
+			}
+		case DISCARD:
+			complete(1);
+			if (discarded.incrementAndGet() % 1000 == 1) {
+				FrameLogger.warn("延迟写入队列已满，记录被丢弃，累计丢弃" + discarded.get() + "条：" + sqlmap);
+			}
+			return;
+		case CALLER_RUNS:
+			complete(1);
+			writeOne(partition, sqlmap, parameter);
+			return;
+		default:
+			complete(1);
+			throw new RejectedExecutionException("延迟写入队列已满：" + sqlmap);
+		}
+	}
+
+	/**
+	 * 等待此前放入的记录全部处理完毕。
+	 */
+	void flush() throws InterruptedException {
+		long target = accepted.get();
+		synchronized (this) {
+			while (completed < target && writer != null && writer.isAlive()) {
+				wait(intervalMillis + 1000);
+			}
+		}
+	}
+
+	/**
+	 * 停止接收新的记录，写入队列中剩余的记录后结束写入线程。
+	 * 
+	 * @param timeoutMillis
+	 *           最多等待的时间（毫秒）
+	 * @return 剩余的记录全部写入（写入线程已经结束）时返回true
+	 */
+	boolean close(long timeoutMillis) throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			thread = writer;
+			if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					// 虚拟机正在关闭
+				}
+			}
+		}
+		if (thread != null) {
+			thread.join(timeoutMillis);
+		}
+		// 队列为空时最后一批记录可能仍在写入
+		return queue.isEmpty() && (thread == null || !thread.isAlive());
+	}
+
+	int getPending() {
+		return queue.size();
+	}
+
+	long getDiscarded() {
+		return discarded.get();
+	}
+
+	/**
+	 * 检查队列是否已经关闭，第一次调用时启动写入线程；与{@link #close(long)}互斥，关闭后不会再启动写入线程。
+	 */
+	private synchronized void startWriter() {
+		if (closed) {
+			throw new RejectedExecutionException("延迟写入队列已经关闭！");
+		}
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(new Writer(), "MyBatisManager-write-behind");
+		writer.setDaemon(true);
+		writer.start();
+		// 虚拟机关闭时写入剩余的记录
+		shutdownHook = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					close(intervalMillis + 10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "MyBatisManager-write-behind-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	private synchronized void complete(int count) {
+		completed += count;
+		notifyAll();
+	}
+
+	/**
+	 * 将一次取出的记录按分区及sqlmap分组写入，保持同一sqlmap的记录的顺序。
+	 */
+	private void write(List<Entry> entries) {
+		Map<String, List<Object>> groups = new LinkedHashMap<String, List<Object>>();
+		Map<String, Entry> firstEntries = new LinkedHashMap<String, Entry>();
+		for (Entry entry : entries) {
+			String groupKey = entry.partition + ":" + entry.sqlmap;
+			List<Object> group = groups.get(groupKey);
+			if (group == null) {
+				group = new ArrayList<Object>();
+				groups.put(groupKey, group);
+				firstEntries.put(groupKey, entry);
+			}
+			group.add(entry.parameter);
+		}
+		for (Map.Entry<String, List<Object>> group : groups.entrySet()) {
+			Entry first = firstEntries.get(group.getKey());
+			try {
+				writeBatch(first.partition, first.sqlmap, group.getValue());
+			} catch (RuntimeException e) {
+				FrameLogger.error("延迟写入批量执行失败，改为逐条写入：" + first.sqlmap, e);
+				for (Object parameter : group.getValue()) {
+					try {
+						writeOne(first.partition, first.sqlmap, parameter);
+					} catch (RuntimeException ex) {
+						FrameLogger.error("延迟写入失败，记录被丢弃：" + first.sqlmap + "，参数：" + parameter, ex);
+					}
+				}
+			}
+		}
+	}
+
+	private class Writer implements Runnable {
+		@Override
+		public void run() {
+			List<Entry> entries = new ArrayList<Entry>(batchSize);
+			while (true) {
+				try {
+					Entry first = queue.poll(intervalMillis, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						if (closed && queue.isEmpty()) {
+							return;
+						}
+						continue;
+					}
+					entries.add(first);
+					long deadline = System.currentTimeMillis() + intervalMillis;
+					while (entries.size() < batchSize) {
+						if (queue.drainTo(entries, batchSize - entries.size()) > 0) {
+							continue;
+						}
+						long remaining = deadline - System.currentTimeMillis();
+						// 关闭时不再等待
+						if (remaining <= 0 || closed) {
+							break;
+						}
+						Entry entry;
+						try {
+							entry = queue.poll(remaining, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							// 已经取出的记录仍需写入
+							break;
+						}
+						if (entry == null) {
+							break;
+						}
+						entries.add(entry);
+					}
+					write(entries);
+				} catch (InterruptedException e) {
+					// 写入线程不响应中断，继续写入队列中的记录；此时尚未取出记录
+				} catch (RuntimeException e) {
+					FrameLogger.error("延迟写入失败！", e);
+				} finally {
+					if (!entries.isEmpty()) {
+						complete(entries.size());
+						entries.clear();
+					}
+				}
+			}
+		}
+	}
+
+	private static class Entry {
+		private final int partition;
+		private final String sqlmap;
+		private final Object parameter;
+
+		private Entry(int partition, String sqlmap, Object parameter) {
+			this.partition = partition;
+			this.sqlmap = sqlmap;
+			this.parameter = parameter;
+		}
+	}
+}
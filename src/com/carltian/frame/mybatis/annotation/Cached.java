@@ -0,0 +1,33 @@
+package com.carltian.frame.mybatis.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotate a select method of a mapper interface as cacheable. Results of auto-commit mappers are cached per method,
+ * keyed by the method's parameters, and evicted by methods annotated with {@link Evicts}.
+ * 
+ * @author Carl Tian
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface Cached {
+	/**
+	 * Time to live of cached results in seconds, 0 means results are only evicted by size or {@link Evicts}.
+	 */
+	long ttl() default 0;
+
+	/**
+	 * Maximum number of cached results of the method, the least recently used ones are evicted first.
+	 */
+	int maxEntries() default 1000;
+
+	/**
+	 * The namespace used by {@link Evicts}, default is the name of the mapper interface.
+	 */
+	String namespace() default "";
+}
@@ -0,0 +1,23 @@
+package com.carltian.frame.mybatis.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotate a method of a mapper interface to evict the results cached by {@link Cached} methods after it is executed.
+ * Within a transaction, the eviction is deferred until the transaction is committed.
+ * 
+ * @author Carl Tian
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface Evicts {
+	/**
+	 * The namespaces to evict, default is the name of the mapper interface.
+	 */
+	String[] value() default {};
+}
@@ -0,0 +1,476 @@
+package com.carltian.frame.mybatis.pool;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+
+import com.carltian.frame.util.FrameLogger;
+
+/**
+ * 高并发连接池，借出和归还连接时不使用锁。<br/>
+ * 空闲连接保存在无锁队列中，同时每个线程会优先尝试借用自己上次使用的连接；连接数量上限由信号量控制，
+ * 连接用尽时借用者在信号量上等待，等待的时间会被统计。<br/>
+ * 物理连接由MyBatis的{@link UnpooledDataSource}创建，因此驱动相关的配置与MyBatis的POOLED相同。
+ * 
+ * @author Carl Tian
+ */
+public class ConcurrentPooledDataSource implements DataSource {
+
+	private final UnpooledDataSource dataSource = new UnpooledDataSource();
+
+	// 配置
+	private int minSize = 0;
+	private int maxSize = 10;
+	private long maxWait = 20000;
+	private long validationInterval = 30000;
+	private int validationTimeout = 5;
+
+	// 状态
+	private volatile boolean initialized;
+	private volatile boolean closed;
+	private Semaphore permits;
+	private final ConcurrentLinkedQueue<PooledConnection> idleConnections = new ConcurrentLinkedQueue<PooledConnection>();
+	private final ThreadLocal<PooledConnection> lastConnection = new ThreadLocal<PooledConnection>();
+	private final AtomicInteger totalCount = new AtomicInteger();
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	// 统计
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("连接池已经关闭！");
+		}
+		if (!initialized) {
+			initialize();
+		}
+		acquirePermit();
+		try {
+			PooledConnection connection = borrowIdle();
+			if (connection == null) {
+				connection = borrowNew();
+			}
+			lastConnection.set(connection);
+			activeCount.incrementAndGet();
+			borrowCount.incrementAndGet();
+			return connection.newHandle(this);
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 使用指定的用户获取连接，该连接不会被池化。
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return dataSource.getConnection(username, password);
+	}
+
+	/**
+	 * 归还连接，由连接代理的close函数调用。
+	 */
+	void release(PooledConnection connection) {
+		activeCount.decrementAndGet();
+		if (closed) {
+			discard(connection);
+			permits.release();
+			return;
+		}
+		try {
+			// 丢弃未提交的更改
+			if (!connection.realConnection.getAutoCommit()) {
+				connection.realConnection.rollback();
+			}
+			connection.lastUsedTime = System.currentTimeMillis();
+			connection.state.set(PooledConnection.IDLE);
+			if (connection.queued.compareAndSet(false, true)) {
+				idleConnections.offer(connection);
+			}
+			if (closed) {
+				// 放回空闲队列的同时连接池被关闭，close可能已经清理过空闲队列
+				closeIdleConnections();
+			}
+		} catch (SQLException e) {
+			FrameLogger.warn("归还连接时发生错误，该连接将被丢弃：" + e.getMessage());
+			discard(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * 关闭连接池：关闭全部空闲连接，使用中的连接在归还时关闭，之后不能再获取连接。
+	 */
+	public void close() {
+		closed = true;
+		closeIdleConnections();
+	}
+
+	/**
+	 * 获取连接池是否已经关闭。
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 关闭全部空闲连接，使用中的连接将在归还后被正常放回连接池。
+	 */
+	public void closeIdleConnections() {
+		PooledConnection connection;
+		while ((connection = idleConnections.poll()) != null) {
+			connection.queued.set(false);
+			if (connection.tryBorrow()) {
+				discard(connection);
+			}
+		}
+	}
+
+	private synchronized void initialize() throws SQLException {
+		if (initialized) {
+			return;
+		}
+		if (maxSize <= 0 || minSize > maxSize) {
+			throw new SQLException("连接池配置错误：minSize=" + minSize + ", maxSize=" + maxSize);
+		}
+		permits = new Semaphore(maxSize);
+		for (int i = 0; i < minSize; i++) {
+			totalCount.incrementAndGet();
+			PooledConnection connection = createConnection();
+			connection.state.set(PooledConnection.IDLE);
+			connection.queued.set(true);
+			idleConnections.offer(connection);
+		}
+		initialized = true;
+	}
+
+	private void acquirePermit() throws SQLException {
+		if (permits.tryAcquire()) {
+			return;
+		}
+		// 连接已用尽，需要等待
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待数据库连接时被中断！", e);
+		}
+		long waited = System.nanoTime() - start;
+		waitCount.incrementAndGet();
+		totalWaitNanos.addAndGet(waited);
+		long max = maxWaitNanos.get();
+		while (waited > max && !maxWaitNanos.compareAndSet(max, waited)) {
+			max = maxWaitNanos.get();
+		}
+		if (!acquired) {
+			timeoutCount.incrementAndGet();
+			throw new SQLException("等待数据库连接超时（" + maxWait + "毫秒）！");
+		}
+	}
+
+	/**
+	 * 借用一个空闲连接，优先使用当前线程上次使用的连接。
+	 * 
+	 * @return 空闲连接，没有空闲连接时返回null
+	 */
+	private PooledConnection borrowIdle() {
+		PooledConnection connection = lastConnection.get();
+		if (connection != null && connection.tryBorrow()) {
+			if (validate(connection)) {
+				return connection;
+			}
+		}
+		while ((connection = idleConnections.poll()) != null) {
+			connection.queued.set(false);
+			if (connection.tryBorrow() && validate(connection)) {
+				return connection;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 在连接数未达到上限时创建新连接，否则等待其他线程归还连接。
+	 */
+	private PooledConnection borrowNew() throws SQLException {
+		while (true) {
+			int total = totalCount.get();
+			if (total < maxSize) {
+				if (totalCount.compareAndSet(total, total + 1)) {
+					return createConnection();
+				}
+			} else {
+				// 已获得许可说明有连接正在归还，稍后重试
+				Thread.yield();
+				PooledConnection connection = borrowIdle();
+				if (connection != null) {
+					return connection;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 创建物理连接，调用前必须已经增加了连接总数。
+	 */
+	private PooledConnection createConnection() throws SQLException {
+		try {
+			return new PooledConnection(dataSource.getConnection());
+		} catch (SQLException e) {
+			totalCount.decrementAndGet();
+			throw e;
+		} catch (RuntimeException e) {
+			totalCount.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * 检查长时间空闲的连接是否仍然有效，无效的连接将被丢弃。
+	 */
+	private boolean validate(PooledConnection connection) {
+		if (validationInterval < 0 || System.currentTimeMillis() - connection.lastUsedTime < validationInterval) {
+			return true;
+		}
+		try {
+			if (connection.realConnection.isValid(validationTimeout)) {
+				return true;
+			}
+		} catch (SQLException e) {
+			// 视为无效
+		}
+		discard(connection);
+		return false;
+	}
+
+	private void discard(PooledConnection connection) {
+		connection.closeQuietly();
+		totalCount.decrementAndGet();
+	}
+
+	// 配置
+
+	public void setDriver(String driver) {
+		dataSource.setDriver(driver);
+	}
+
+	public String getDriver() {
+		return dataSource.getDriver();
+	}
+
+	public void setUrl(String url) {
+		dataSource.setUrl(url);
+	}
+
+	public String getUrl() {
+		return dataSource.getUrl();
+	}
+
+	public void setUsername(String username) {
+		dataSource.setUsername(username);
+	}
+
+	public String getUsername() {
+		return dataSource.getUsername();
+	}
+
+	public void setPassword(String password) {
+		dataSource.setPassword(password);
+	}
+
+	public String getPassword() {
+		return dataSource.getPassword();
+	}
+
+	public void setDriverProperties(Properties driverProperties) {
+		dataSource.setDriverProperties(driverProperties);
+	}
+
+	public Properties getDriverProperties() {
+		return dataSource.getDriverProperties();
+	}
+
+	public void setAutoCommit(boolean autoCommit) {
+		dataSource.setAutoCommit(autoCommit);
+	}
+
+	public boolean isAutoCommit() {
+		return dataSource.isAutoCommit();
+	}
+
+	public void setDefaultTransactionIsolationLevel(Integer level) {
+		dataSource.setDefaultTransactionIsolationLevel(level);
+	}
+
+	public Integer getDefaultTransactionIsolationLevel() {
+		return dataSource.getDefaultTransactionIsolationLevel();
+	}
+
+	/**
+	 * 设置初始化时创建的连接数，默认为0。
+	 */
+	public void setMinSize(int minSize) {
+		this.minSize = minSize;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * 设置最大连接数，默认为10。
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * 设置连接用尽时的最长等待时间（毫秒），默认为20000。
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * 设置连接空闲多久（毫秒）之后，借出前需要检查其有效性，默认为30000，小于0时不检查。
+	 */
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public long getValidationInterval() {
+		return validationInterval;
+	}
+
+	/**
+	 * 设置检查连接有效性的超时时间（秒），默认为5。
+	 */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public int getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	// 统计
+
+	/**
+	 * 获取当前的连接总数（使用中及空闲）。
+	 */
+	public int getTotalCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * 获取当前使用中的连接数。
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * 获取借出连接的总次数。
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * 获取因连接用尽而等待的次数。
+	 */
+	public long getWaitCount() {
+		return waitCount.get();
+	}
+
+	/**
+	 * 获取平均等待时间（毫秒），只统计发生了等待的借用。
+	 */
+	public double getAverageWaitTime() {
+		long count = waitCount.get();
+		return (count == 0) ? 0 : totalWaitNanos.get() / 1000000.0 / count;
+	}
+
+	/**
+	 * 获取最长等待时间（毫秒）。
+	 */
+	public long getMaxWaitTime() {
+		return maxWaitNanos.get() / 1000000L;
+	}
+
+	/**
+	 * 获取等待超时的次数。
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	// DataSource
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return dataSource.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		dataSource.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		dataSource.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return dataSource.getLoginTimeout();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		throw new SQLException(getClass().getName() + " is not a wrapper.");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return false;
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.carltian.frame.mybatis.pool;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
+
+/**
+ * {@link ConcurrentPooledDataSource}的工厂，在mybatis.xml中将dataSource的type设置为该类的完整类名即可使用：
+ * 
+ * <pre>
+ * &lt;dataSource type="com.carltian.frame.mybatis.pool.ConcurrentPooledDataSourceFactory"&gt;
+ *   &lt;property name="driver" value="..."/&gt;
+ *   &lt;property name="url" value="..."/&gt;
+ *   &lt;property name="username" value="..."/&gt;
+ *   &lt;property name="password" value="..."/&gt;
+ *   &lt;property name="minSize" value="5"/&gt;
+ *   &lt;property name="maxSize" value="50"/&gt;
+ *   &lt;property name="maxWait" value="20000"/&gt;
+ * &lt;/dataSource&gt;
+ * </pre>
+ * 
+ * 与MyBatis的POOLED相同，以“driver.”开头的属性将被传递给JDBC驱动。
+ * 
+ * @author Carl Tian
+ */
+public class ConcurrentPooledDataSourceFactory extends UnpooledDataSourceFactory {
+
+	public ConcurrentPooledDataSourceFactory() {
+		this.dataSource = new ConcurrentPooledDataSource();
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.carltian.frame.mybatis.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接池中的一个物理连接及其状态。<br/>
+ * 状态的变更全部通过CAS完成：借出时由空闲变为使用中，归还时由使用中变为空闲。
+ * 
+ * @author Carl Tian
+ */
+class PooledConnection {
+
+	static final int IDLE = 0;
+	static final int IN_USE = 1;
+	static final int CLOSED = 2;
+
+	private static final Class<?>[] INTERFACES = new Class<?>[] { Connection.class };
+
+	final Connection realConnection;
+	final AtomicInteger state = new AtomicInteger(IN_USE);
+	// 是否已经位于空闲队列中，防止同一连接被重复放入队列
+	final AtomicBoolean queued = new AtomicBoolean();
+	volatile long lastUsedTime = System.currentTimeMillis();
+
+	PooledConnection(Connection realConnection) {
+		this.realConnection = realConnection;
+	}
+
+	/**
+	 * 尝试借出该连接。
+	 * 
+	 * @return 是否成功借出
+	 */
+	boolean tryBorrow() {
+		return state.compareAndSet(IDLE, IN_USE);
+	}
+
+	/**
+	 * 创建一个交给使用者的连接代理，每次借出都会创建新的代理，代理被关闭后即失效，不会影响连接的下一个使用者。
+	 */
+	Connection newHandle(ConcurrentPooledDataSource dataSource) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), INTERFACES, new Handle(dataSource));
+	}
+
+	/**
+	 * 关闭物理连接。
+	 */
+	void closeQuietly() {
+		state.set(CLOSED);
+		try {
+			realConnection.close();
+		} catch (SQLException e) {
+			// 连接可能已经失效，忽略
+		}
+	}
+
+	private class Handle implements InvocationHandler {
+		private final ConcurrentPooledDataSource dataSource;
+		private boolean closed;
+
+		private Handle(ConcurrentPooledDataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name) && method.getParameterTypes().length == 0) {
+				if (!closed) {
+					closed = true;
+					dataSource.release(PooledConnection.this);
+				}
+				return null;
+			} else if ("isClosed".equals(name) && method.getParameterTypes().length == 0) {
+				return closed;
+			} else if (Object.class.equals(method.getDeclaringClass())) {
+				return method.invoke(this, args);
+			}
+			if (closed) {
+				throw new SQLException("连接已经被关闭！");
+			}
+			try {
+				return method.invoke(realConnection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}